@@ -0,0 +1,30 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client;
+
+/** 
+ * Marks a component as not important to the page starting up.
+ * <p>
+ * Analytics hooks, prefetchers, tooltips and so on. The register calls
+ * init() and run() on these components when the browser is idle, and
+ * its ready callbacks do not wait for them.
+ * <p>
+ * If a component that isn't a background component depends on one, the 
+ * background component (and anything it depends on) is run as normal.
+ */
+public interface BackgroundComponent {
+}
@@ -52,6 +52,9 @@ public abstract class Component {
 	/** List of components that this one depends on. */
 	private ArrayList<Component> dependsOn = null;
 	
+	/** List of components this one has ever waited on, so it can be released from them. */
+	private ArrayList<Component> required = null;
+	
 	/** List of values that this component requires. */
 	private ArrayList<String> requiredValues = null;
 	
@@ -61,6 +64,9 @@ public abstract class Component {
 	/** Utility helper class. */
 	protected ComponentUtils utils = null;
 	
+	/** Number of lazy components this one is waiting on to be created. */
+	private int deferredCount = 0;
+	
 	/** 
 	 * If this component has run. 
 	 * <p>
@@ -87,13 +93,72 @@ public abstract class Component {
 		}
 	}
 	
-	/** Call to wait on a specific component instance by html element id. */
+	/** Returns the components waiting on this one, if any; may be null. */
+	ArrayList<Component> getDependants() {
+		return(dependedOn);
+	}
+	
+	/** 
+	 * Stops every component this one waited on from holding on to it.
+	 * <p>
+	 * Called by the register when this component is removed, so they can
+	 * be shutdown later themselves.
+	 */
+	void release() {
+		if (required != null) {
+			for (Component c : required) {
+				if (c.dependedOn != null)
+					c.dependedOn.remove(this);
+			}
+			required = null;
+		}
+		dependsOn = null;
+	}
+	
+	/** Returns the components this one is still waiting on, if any; may be null. */
+	ArrayList<Component> getRequirements() {
+		return(dependsOn);
+	}
+	
+	/** Returns true if this component is still waiting on other components. */
+	boolean isWaiting() {
+		return(((dependsOn != null) && (dependsOn.size() > 0)) || (deferredCount > 0));
+	}
+	
+	/** Called by the register when this component must wait for a lazy component to be created. */
+	void waitForDeferred() {
+		++deferredCount;
+	}
+	
+	/** 
+	 * Called by the register when a lazy component this one was waiting for has been created.
+	 * <p>
+	 * If created is null the lazy component could not be created, and this
+	 * component fails.
+	 */
+	void deferredCreated(Component created) {
+		--deferredCount;
+		if (created != null)
+			requireComponentInstance(created);
+		else if (!hasRun) {
+			ComponentLog.trace(this.toString()+": Unable to depend on a lazy component. It could not be created.");
+			failed();
+		}
+	}
+	
+	/** 
+	 * Call to wait on a specific component instance by html element id. 
+	 * <p>
+	 * If the component is lazy and hasn't been created yet, the register
+	 * creates it immediately and this component waits for it.
+	 */
 	protected void requireComponent(String id) {
-		Component c = root.getRegister().getComponent(id);
-		if (c == null) 
-			ComponentLog.trace(this.toString()+": Unable to depend on Component #"+id+". No such id.");
-		if (!c.active()) 
+		ComponentRegister register = root.getRegister();
+		Component c = register.getComponent(id);
+		if (c != null) 
 			requireComponentInstance(c);
+		else if (!register.loadDeferred(id, null, this))
+			ComponentLog.trace(this.toString()+": Unable to depend on Component #"+id+". No such id.");
 	}
 	
 	/** 
@@ -109,16 +174,25 @@ public abstract class Component {
 				dependsOn = new ArrayList<Component>();
 			dependsOn.add(target);
 			target.registerWaitIntent(this);
+			if (required == null)
+				required = new ArrayList<Component>();
+			required.add(target);
 		}
 	}
 	
-	/** Call to wait on another component, non-specifically, by type. */
+	/** 
+	 * Call to wait on another component, non-specifically, by type. 
+	 * <p>
+	 * As per requireComponent(String), lazy components are created if 
+	 * there are no other instances of the type.
+	 */
 	protected void requireComponentType(String type) {
-		Component instance = root.getRegister().getComponentByType(type);
-		if (instance == null) 
-			ComponentLog.trace(this.toString()+": Unable to depend on Component type "+type+". No such type.");
-		else
+		ComponentRegister register = root.getRegister();
+		Component instance = register.getComponentByType(type);
+		if (instance != null) 
 			requireComponentInstance(instance);
+		else if (!register.loadDeferred(null, type, this))
+			ComponentLog.trace(this.toString()+": Unable to depend on Component type "+type+". No such type.");
 	}
 	
 	/** Adds an asset that this component requires. */
@@ -153,9 +227,9 @@ public abstract class Component {
 	
 	/** Returns the count of unresolved dependencies. */
 	public int getDependencyCount() {
-		int rtn = 0;
+		int rtn = deferredCount;
 		if (dependsOn != null)
-			rtn = dependsOn.size();
+			rtn += dependsOn.size();
 		
 		// Look for any missing assets and values. 
 		// ...but only if we don't have any external dependencies.
@@ -185,6 +259,8 @@ public abstract class Component {
 	 */
 	public ArrayList<String> getDependencies() {
 		ArrayList<String> rtn = new ArrayList<String>();
+		if (deferredCount > 0)
+			rtn.add("Lazy components:" + deferredCount);
 		if (dependsOn != null) {
 			for (Component c : dependsOn) {
 				String id = c.getContainer().getElement().getId();
@@ -248,6 +324,18 @@ public abstract class Component {
 	   }
 	}
 	
+	/** 
+	 * Returns the run priority of this component.
+	 * <p>
+	 * Of the components ready to run, the one with the highest priority runs
+	 * first; components this one depends on are run with at least the same
+	 * priority. By default this is taken from the markup, see 
+	 * ComponentContainer.getPriority(), but it can be overridden.
+	 */
+	public int getPriority() {
+		return(root.getPriority());
+	}
+	
 	/** Returns true if the component has run. */
 	public boolean active() {
 		return(hasRun);
@@ -273,7 +361,7 @@ public abstract class Component {
 	 * are depending on this one.
 	 * */
 	public void shutdown() throws Exception {
-		if (dependedOn.size() > 0) 
+		if ((dependedOn != null) && (dependedOn.size() > 0)) 
 			throw new Exception("Unresolved component dependency");
 	}
 	
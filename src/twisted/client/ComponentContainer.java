@@ -23,7 +23,9 @@ import com.google.gwt.dom.client.Element;
 
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentQuery;
+import twisted.client.impl.ComponentQueryIterator;
 import twisted.client.ComponentRegister;
+import twisted.client.utils.ElementMap;
 
 /** 
  * Converts arbitrary Elements into valid GWT containers.
@@ -52,11 +54,19 @@ public class ComponentContainer extends ComponentFrame {
 	/** Element type, because we do actually cache this. */
 	private String type = null;
 	
-	/** Cached element to classname mappings. */
+	/** Cached element to classname mappings, by classname and limit. */
 	private HashMap<String, ArrayList<Element>> elements = new HashMap<String, ArrayList<Element>>();
 	
+	/** 
+	 * Values and assets from a server manifest, by classname; null if not primed.
+	 * <p>
+	 * Names listed here are never searched for under this.root; other names
+	 * still are.
+	 */
+	private HashMap<String, ArrayList<Element>> primed = null;
+	
 	/** Set of created element/panel instances. */
-	private static HashMap<Element, ComponentContainer> instances = new HashMap<Element, ComponentContainer>();
+	private static ElementMap<ComponentContainer> instances = new ElementMap<ComponentContainer>();
 	
 	/** 
 	 * Creates a component containers from an element. 
@@ -81,6 +91,31 @@ public class ComponentContainer extends ComponentFrame {
 		return(type);
 	}
 	
+	/** 
+	 * Returns the priority hint from the markup.
+	 * <p>
+	 * This is given as a ComponentPriority-N class on the root element; 
+	 * components without one have priority 0. Higher numbers run first.
+	 */
+	public int getPriority() {
+		int rtn = 0;
+		if (root != null) {
+	 		String[] classes = root.getClassName().split(" ");
+	 		for (int i = 0; i < classes.length; ++i) {
+	 			if (classes[i].startsWith("ComponentPriority-")) { 
+	 				try {
+	 					rtn = Integer.parseInt(classes[i].replaceFirst("ComponentPriority-", ""));
+	 				}
+	 				catch(NumberFormatException e) {
+	 					ComponentLog.trace("Invalid component priority: " + classes[i]);
+	 				}
+	 				break;
+	 			}
+	 		}
+		}
+		return(rtn);
+	}
+	
 	private String getComponentId(String classname) {
 		String rtn = null;
 		if (classname != null) {
@@ -105,6 +140,50 @@ public class ComponentContainer extends ComponentFrame {
 		return(rtn);
 	}
 	
+	/** 
+	 * Supplies the values and assets of this component, by name, so they 
+	 * never have to be searched for.
+	 * <p>
+	 * Used by ComponentRegister.parseManifest(); the sets given must be
+	 * complete, and in document order. Names that aren't given are still
+	 * searched for as normal.
+	 */
+	void prime(HashMap<String, ArrayList<Element>> values, HashMap<String, ArrayList<Element>> assets) {
+		primed = new HashMap<String, ArrayList<Element>>();
+		for (String name : values.keySet())
+			primed.put("ComponentValue-ComponentId-" + name, values.get(name));
+		for (String name : assets.keySet())
+			primed.put("ComponentAsset-ComponentId-" + name, assets.get(name));
+		elements.clear();
+	}
+	
+	/** 
+	 * Disposes of the containers for every element that belongs to the 
+	 * component at root, including root itself.
+	 * <p>
+	 * Elements inside nested components are left alone.
+	 */
+	public static void dispose(Element root) {
+		for (Element e : getOwnedElements(root)) {
+			ComponentContainer container = instances.remove(e);
+			if (container != null)
+				container.dispose();
+		}
+	}
+	
+	/** Drops cached elements, and detaches the container. */
+	@Override
+	protected void dispose() {
+		elements.clear();
+		primed = null;
+		super.dispose();
+	}
+	
+	/** Returns the number of cached containers. */
+	public static int getCacheSize() {
+		return(instances.size());
+	}
+	
 	/** Returns the register. */
 	public ComponentRegister getRegister() {
 		return(register);
@@ -145,14 +224,15 @@ public class ComponentContainer extends ComponentFrame {
 		}
 	}
 	
-	/** Shortcut to get an element by ID. */
+	/** 
+	 * Shortcut to get an element by ID. 
+	 * <p>
+	 * Answered from the ComponentIndex, if it is enabled and covers parent.
+	 */
 	public static Element getElementById(String id, Element parent) {
 	  Element rtn = null; 
-		if ((id != null) && (parent != null)) {
-		  ComponentQuery q = ComponentQuery.query(id, parent, ComponentQuery.QueryType.ID);
-		  if (q.getLength() > 0)
-		    rtn = q.getItem(0);
-		}
+		if ((id != null) && (parent != null)) 
+		  rtn = ComponentQuery.iterate(id, parent, ComponentQuery.QueryType.ID, false).nextOrNull();
 		return(rtn);
 	}
 	
@@ -171,15 +251,15 @@ public class ComponentContainer extends ComponentFrame {
 	 * To do that, do something like:<br/>
 	 * e.setInnerHtml("... &lt; div class='Component ComponentId-xxx' &gt; ...");<br/>
 	 * Element root = ComponentContainer.injectComponentId("ComponentId-xxx", "instanceName", e);
+	 * <p>
+	 * To stamp out many instances of the same block use a ComponentTemplate.
 	 */
 	public static Element injectComponentId(String target, String id, Element root) {
 	  Element rtn = null;
 		if (id != null) {
-		  ComponentQuery q = ComponentQuery.query(target, root);
-		  if (q.getLength() > 0) {
-  		  rtn = q.getItem(0);
+		  rtn = ComponentQuery.iterate(target, root).nextOrNull();
+		  if (rtn != null) 
   		  rtn.setId(id);
-		  }
 		}
 		return(null);
 	}
@@ -276,10 +356,19 @@ public class ComponentContainer extends ComponentFrame {
 	 * component this.root should be passed as 'root'.
 	 */
 	private ArrayList<Element> getElements(String type, String id, int limit, Element root) {
-		ArrayList<Element> rtn = elements.get(type + "-" + id);
-		if ((rtn == null) || (rtn.size() > limit)) {
-			rtn = getElementsNoCache(type, id, limit, root);
-			elements.put(type + "-" + id, rtn);
+		String key = type + "-" + id + "-" + limit;
+		ArrayList<Element> rtn = elements.get(key);
+		if (rtn == null) {
+			ArrayList<Element> set = null;
+			if ((primed != null) && (root == this.root)) 
+				set = primed.get(type + "-" + id);
+			if (set != null) {
+				rtn = new ArrayList<Element>();
+				rtn.addAll(set.subList(0, Math.min(limit, set.size())));
+			}
+			else
+				rtn = getElementsNoCache(type, id, limit, root);
+			elements.put(key, rtn);
 		}
 		return(rtn);
 	}
@@ -287,43 +376,19 @@ public class ComponentContainer extends ComponentFrame {
 	/** 
 	 * Returns elements which are not the child of any other component matching classname.
 	 * <p>
-	 * The results are not cached.
+	 * Nested components are never descended into, so their contents are not
+	 * scanned at all, and the search stops once limit matches are found. The
+	 * results are not cached.
 	 * @type The class type, eg. ComponentAsset
 	 * @id The component id to match, eg. ComponentId-Panel
 	 */
 	private static ArrayList<Element> getElementsNoCache(String type, String id, int limit, Element root) {
 		ArrayList<Element> rtn = new ArrayList<Element>();
-		ComponentQuery ids = ComponentQuery.query(id, root);
-		ComponentQuery types = ComponentQuery.query(type, root);
-		int count = ids.getLength();
-		int found = 0;
-		for (int i = 0; (found < limit) && (i < count); ++i) {
-			Element e = ids.getItem(i);
-			if (types.contains(e))
-  			if (getParentComponent(e) == root) 
-  				rtn.add(e);
-		}
-		return(rtn);
-	}
-	
-	/** Finds the parent component of an element. */
-	private static Element getParentComponent(Element e) {
-		Element rtn = null;
-		Element parent = e.getParentElement();
-		loop: while ((parent != null) && (rtn == null)) {
-			String classname = parent.getClassName();
-			if (classname != null) {
-				if(classname.contains("Component")) {
-					String set[] = classname.split(" ");
-					for (String s : set) {
-						if (s.equals("Component")) {
-							rtn = parent;
-							break loop;
-						}
-					}
-				}
-			}
-			parent = parent.getParentElement();
+		ComponentQueryIterator ids = ComponentQuery.iterate(id, root, ComponentQuery.QueryType.CLASS, true);
+		while ((rtn.size() < limit) && ids.hasNext()) {
+			Element e = ids.next();
+			if (ComponentQuery.hasClass(e, type))
+				rtn.add(e);
 		}
 		return(rtn);
 	}
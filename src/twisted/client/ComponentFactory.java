@@ -16,6 +16,9 @@
 
 package twisted.client;
 
+import java.util.List;
+import java.util.Set;
+
 import twisted.client.ComponentContainer;
 
 /**
@@ -42,11 +45,37 @@ public abstract class ComponentFactory {
 	 * call on root.getRegister(); which is why the return
 	 * is null.
 	 * <p>
-	 * Calls to this function are also deferred via Timeout,
+	 * Calls to this function are also deferred via the AsyncScheduler,
 	 * so errors cannot propagate upwards.
 	 */
 	public abstract void createComponent(ComponentContainer root, String requestId);
 	
+	/** 
+	 * Creates components for every root element found by one parse() call.
+	 * <p>
+	 * roots.get(i) is the container for requestIds.get(i). The call is made
+	 * once per parse, deferred via the AsyncScheduler, so factories can override this
+	 * to create a whole batch at once; eg. to load one split point per type
+	 * rather than one per instance.
+	 * <p>
+	 * By default this calls createComponent() for each root in turn.
+	 */
+	public void createComponents(List<ComponentContainer> roots, List<String> requestIds) {
+		for (int i = 0; i < roots.size(); ++i) 
+			createComponent(roots.get(i), requestIds.get(i));
+	}
+	
+	/** 
+	 * Called with every component type found by a parse() call, before any 
+	 * of them are created.
+	 * <p>
+	 * Factories that use code splitting can override this to start loading
+	 * every split point the page needs at once, rather than one after another
+	 * as each createComponent() call is made. By default this does nothing.
+	 */
+	public void prefetch(Set<String> types) {
+	}
+	
 	/** Shortcut for successfully creating a component. */
 	protected void componentCreated(Component component, String requestId) {
 	  component.getContainer().getRegister().componentCreated(component, requestId);
@@ -17,11 +17,22 @@
 package twisted.client;
 
 import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.HashMap;
-import java.util.Date;
-import java.util.Set;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.PriorityQueue;
 
+import twisted.client.impl.ComponentFrame;
+import twisted.client.impl.ComponentManifestEntry;
 import twisted.client.impl.ComponentQuery;
+import twisted.client.impl.DomObserver;
+import twisted.client.impl.ViewportObserver;
+import twisted.client.impl.ComponentRequests;
+import twisted.client.utils.AsyncScheduler;
+import twisted.client.utils.ElementMap;
 import twisted.client.utils.CommonEvents;
 import twisted.client.utils.GenericCallback;
 import twisted.client.Component;
@@ -29,8 +40,11 @@ import twisted.client.ComponentContainer;
 import twisted.client.ComponentFactory;
 import twisted.client.ComponentLog;
 
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
 import com.google.gwt.user.client.Timer;
 
 /** 
@@ -46,11 +60,20 @@ import com.google.gwt.user.client.Timer;
  * 		<li> Create a ComponentRegister
  * 		<li> Call ComponentRegister.parse()
  * </ul>
+ * <p>
+ * The register holds every component it creates, by id, by type and in
+ * creation order, and each component holds its root element; so removing
+ * content from the page does not free its components, even though the 
+ * element caches are weak. Call removeComponents() for the content, or use 
+ * watch(), which does so as content is removed.
  */
 public class ComponentRegister {
 	
 	/** Held components, by element. */
-	private HashMap<Element, Component> elementCache = new HashMap<Element, Component>();
+	private ElementMap<Component> elementCache = new ElementMap<Component>();
+	
+	/** Held components, in the order they were created. */
+	private LinkedHashSet<Component> components = new LinkedHashSet<Component>();
 	
 	/** 
 	 * Held components, by id.
@@ -59,22 +82,86 @@ public class ComponentRegister {
 	 */
 	private HashMap<String, Component> idCache = new HashMap<String, Component>();
 	
+	/** Held components, by type, in the order they were created. */
+	private HashMap<String, LinkedHashSet<Component>> typeCache = new HashMap<String, LinkedHashSet<Component>>();
+	
 	/** 
 	 * Set of requested components, by id. 
 	 * <p>
 	 * Components are loaded async, so we need to keep track of the
 	 * loads that we are still waiting on completion for.
 	 */
-	private ArrayList<String> componentRequests = new ArrayList<String>();
+	private ComponentRequests componentRequests = new ComponentRequests();
+	
+	/** Root elements with a creation request still pending, with the request id. */
+	private ElementMap<String> pendingRoots = new ElementMap<String>();
+	
+	/** Root element of each pending creation request, by request id. */
+	private HashMap<String, Element> pendingRequests = new HashMap<String, Element>();
+	
+	/** Creation requests taking longer than this many milliseconds are logged; 0 for never. */
+	private int slowRequest = 0;
 	
 	/** One time event listeners for component parsing being completed. */
 	private ArrayList<GenericCallback<Void>> readyListeners = new ArrayList<GenericCallback<Void>>();
 	
-	/** Set of components being run, if any. */
-	private ArrayList<Component> runList = null;
+	/** Set of components waiting to be run or running, if any, in init order. */
+	private LinkedHashSet<Component> runList = null;
+	
+	/** Position of each component in the run list, for ordering. */
+	private HashMap<Component, Integer> runOrder = null;
+	
+	/** Number of components ever added to the run list. */
+	private int runCount = 0;
+	
+	/** Members of the run list that are run when the browser is idle. */
+	private HashSet<Component> background = new HashSet<Component>();
+	
+	/** Background components waiting for an idle slot to be init()'ed. */
+	private LinkedHashSet<Component> idleInit = new LinkedHashSet<Component>();
+	
+	/** 
+	 * Components with no outstanding component dependencies. 
+	 * <p>
+	 * Components are added here when their last dependency completes,
+	 * so finishing a component only ever looks at its direct dependants.
+	 */
+	private PriorityQueue<Component> readyQueue = null;
+	
+	/** Members of readyQueue. */
+	private HashSet<Component> queued = null;
+	
+	/** Components with no component dependencies that are still missing assets or values. */
+	private ArrayList<Component> blocked = null;
 	
-	/** The component currently being run, if any. */
-	private Component running = null;
+	/** Orders the ready queue by run list position. */
+	private final Comparator<Component> runOrderComparator = new Comparator<Component>() {
+		public int compare(Component a, Component b) {
+			int rtn = priorities.get(b).compareTo(priorities.get(a));
+			if (rtn == 0)
+				rtn = runOrder.get(a) - runOrder.get(b);
+			return(rtn);
+		}
+	};
+	
+	/** 
+	 * Effective priority of each component in the run list.
+	 * <p>
+	 * This is the highest of its own priority and that of every component
+	 * waiting on it, so prerequisites of important components are promoted.
+	 */
+	private HashMap<Component, Integer> priorities = null;
+	
+	/** The components currently being run, if any. */
+	private LinkedHashSet<Component> running = new LinkedHashSet<Component>();
+	
+	/** 
+	 * The maximum number of components run at once. 
+	 * <p>
+	 * 1 runs components one after another; 0 runs every dependency free
+	 * component as soon as it is ready.
+	 */
+	private int concurrency = 1;
 	
 	/** The factory associated with this register. */
 	private ComponentFactory factory = null;
@@ -88,6 +175,39 @@ public class ComponentRegister {
 	/** If any component creations have failed. */
 	private boolean failed;
 	
+	/** The element being watched for changes, if any. */
+	private Element watchRoot = null;
+	
+	/** Observer for the watched element, if any. */
+	private DomObserver watcher = null;
+	
+	/** Elements inserted since the watch was last dealt with. */
+	private ArrayList<Element> inserted = new ArrayList<Element>();
+	
+	/** Elements removed since the watch was last dealt with. */
+	private ArrayList<Element> removed = new ArrayList<Element>();
+	
+	/** If dealing with the watched changes has been scheduled. */
+	private boolean watchScheduled = false;
+	
+	/** Reports lazy components coming into view; null unless lazy. */
+	private ViewportObserver viewport = null;
+	
+	/** Lazy containers that have not been created yet, by root element. */
+	private ElementMap<ComponentContainer> deferred = new ElementMap<ComponentContainer>();
+	
+	/** Lazy containers that have not been created yet, by id. */
+	private HashMap<String, ComponentContainer> deferredIds = new HashMap<String, ComponentContainer>();
+	
+	/** Lazy containers that have not been created yet, by type. */
+	private HashMap<String, LinkedHashSet<ComponentContainer>> deferredTypes = new HashMap<String, LinkedHashSet<ComponentContainer>>();
+	
+	/** Lazy containers currently being created, with the components waiting on each. */
+	private HashMap<ComponentContainer, ArrayList<Component>> loading = new HashMap<ComponentContainer, ArrayList<Component>>();
+	
+	/** Lazy containers currently being created, by request id. */
+	private HashMap<String, ComponentContainer> loadingRequests = new HashMap<String, ComponentContainer>();
+	
 	public ComponentRegister(ComponentFactory factory) {
 		this.factory = factory;
 	}
@@ -98,44 +218,371 @@ public class ComponentRegister {
 		parse(root);
 	}
 	
-	/** Parses sub-objects of the root element given for components. */
+	/** 
+	 * Parses sub-objects of the root element given for components. 
+	 * <p>
+	 * If ComponentIndex.enable() has been called the components are found
+	 * from the index rather than by rescanning root.
+	 */
 	public void parse(Element root) {
+		ComponentQuery elements = ComponentQuery.query("Component", root);
+		int count = elements.getLength();
+		ArrayList<Element> found = new ArrayList<Element>(count);
+		for (int i = 0; i < count; ++i) 
+			found.add(elements.getItem(i));
+		parseComponents(found);
+	}
+	
+	/** 
+	 * Parses the given elements and their sub-objects for components.
+	 * <p>
+	 * Unlike parse(Element), the elements themselves are included; so this
+	 * can be given freshly inserted component roots directly. Elements are
+	 * only ever requested once, even if the roots overlap.
+	 */
+	public void parseAll(List<Element> roots) {
+		ArrayList<Element> found = new ArrayList<Element>();
+		HashSet<Element> seen = new HashSet<Element>();
+		for (Element root : roots) {
+			if (ComponentQuery.hasClass(root, "Component") && seen.add(root))
+				found.add(root);
+			for (Element e : ComponentQuery.iterate("Component", root)) {
+				if (seen.add(e))
+					found.add(e);
+			}
+		}
+		parseComponents(found);
+	}
+	
+	/** 
+	 * Creates components from the manifest in the given global variable.
+	 * <p>
+	 * @see #parseManifest(JsArray, Element); if there is no such variable 
+	 * the page is parsed as normal.
+	 */
+	public void parseManifest(String name) {
+		JsArray<ComponentManifestEntry> manifest = ComponentManifestEntry.read(name);
+		if (manifest != null)
+			parseManifest(manifest, Document.get().getBody());
+		else {
+			ComponentLog.trace("No component manifest " + name + "; searching the DOM instead");
+			parse();
+		}
+	}
+	
+	/** 
+	 * Creates components from a manifest written by the server.
+	 * <p>
+	 * The manifest gives the path to each component, and its values and 
+	 * assets, from root; so the DOM never has to be searched. Fragments 
+	 * added to the page later should be parsed as normal.
+	 * <p>
+	 * Every element the manifest points to is checked: component roots for
+	 * their type and id, and values and assets for their classes. A root
+	 * whose values or assets don't match is created without them, so its
+	 * container searches as normal. If any root doesn't match the page, root
+	 * is also searched for components; those the manifest did find aren't 
+	 * requested twice. See twisted.server.ComponentManifest.
+	 */
+	public void parseManifest(JsArray<ComponentManifestEntry> manifest, Element root) {
+		ArrayList<Element> found = new ArrayList<Element>();
+		boolean missed = false;
+		for (int i = 0; i < manifest.length(); ++i) {
+			ComponentManifestEntry entry = manifest.get(i);
+			Element e = ComponentManifestEntry.resolve(root, entry.getPath());
+			if (entry.matches(e)) {
+				found.add(e);
+				HashMap<String, ArrayList<Element>> values = entry.getValues(e);
+				HashMap<String, ArrayList<Element>> assets = entry.getAssets(e);
+				if ((values != null) && (assets != null) && (getComponent(e) == null)) 
+					ComponentContainer.get(e, this).prime(values, assets);
+			}
+			else
+				missed = true;
+		}
+		if (missed) {
+			ComponentLog.trace("Component manifest doesn't match the page; searching the DOM for the rest");
+			ComponentQuery elements = ComponentQuery.query("Component", root);
+			for (int i = 0; i < elements.getLength(); ++i) 
+				found.add(elements.getItem(i));
+		}
+		parseComponents(found);
+	}
+	
+	/** 
+	 * Requests components for each of the given component root elements that doesn't already have one.
+	 * <p>
+	 * Roots that are deferred, or already waiting on a request, are skipped;
+	 * so overlapping parses (eg. parseAll() on content the watch also sees)
+	 * never create a root twice.
+	 */
+	private void parseComponents(ArrayList<Element> found) {
 		failed = false;
 		if (timer != null) {
 			timer.schedule(timeout);
 		}
-		ComponentQuery elements = ComponentQuery.query("Component", root);
-		int count = elements.getLength();
-		for (int i = 0; i < count; ++i) {
-			root = elements.getItem(i);
-			if (getComponent(root) == null) {
+		ArrayList<ComponentContainer> containers = new ArrayList<ComponentContainer>();
+		ArrayList<String> requestIds = new ArrayList<String>();
+		for (Element root : found) {
+			if ((getComponent(root) == null) && !deferred.containsKey(root) && !pendingRoots.containsKey(root)) {
 				ComponentContainer cc = ComponentContainer.get(root, this);
+				if (viewport != null) 
+					defer(cc);
+				else {
+					containers.add(cc);
+					requestIds.add(createRequestId(cc));
+				}
+			}
+		}
+		if (containers.size() > 0)
+			createComponents(containers, requestIds);
+		else if (componentRequests.size() == 0) {
+			// Nothing to wait for (eg. everything found is lazy); the ready listeners still run.
+			AsyncScheduler.schedule(new ScheduledCommand() {
+				public void execute() {
+					componentCreationComplete();
+				}
+			});
+		}
+	}
+	
+	/** 
+	 * Turns lazy creation on or off.
+	 * <p>
+	 * When lazy, components found by parse() are not created (and so not 
+	 * init()'ed or run()) until their root element comes within margin
+	 * pixels of the viewport. A component that depends on a lazy component, 
+	 * by id or by type, forces it to be created immediately; if that fails,
+	 * the component depending on it fails too.
+	 * <p>
+	 * Turning lazy creation off creates any components still waiting. On 
+	 * browsers without IntersectionObserver components are never lazy.
+	 */
+	public void setLazy(boolean lazy, int margin) {
+		if (viewport != null) {
+			viewport.disconnect();
+			viewport = null;
+		}
+		if (lazy && ViewportObserver.isSupported()) {
+			viewport = new ViewportObserver(new ViewportObserver.Listener() {
+				public void onVisible(ArrayList<Element> elements) {
+					ArrayList<ComponentContainer> set = new ArrayList<ComponentContainer>();
+					for (Element e : elements) {
+						ComponentContainer cc = deferred.get(e);
+						if (cc != null)
+							set.add(cc);
+					}
+					load(set);
+				}
+			}, margin);
+			for (ComponentContainer cc : getDeferred()) {
+				if (!loading.containsKey(cc))
+					viewport.observe(cc.getRootElement());
+			}
+		}
+		else 
+			load(getDeferred());
+	}
+	
+	/** Returns every deferred container. */
+	private ArrayList<ComponentContainer> getDeferred() {
+		ArrayList<ComponentContainer> rtn = new ArrayList<ComponentContainer>();
+		for (LinkedHashSet<ComponentContainer> set : deferredTypes.values())
+			rtn.addAll(set);
+		return(rtn);
+	}
+	
+	/** Holds a container back until it is visible or required. */
+	private void defer(ComponentContainer cc) {
+		Element root = cc.getRootElement();
+		deferred.put(root, cc);
+		if ((root.getId() != null) && (!root.getId().equals("")))
+			deferredIds.put(root.getId(), cc);
+		LinkedHashSet<ComponentContainer> set = deferredTypes.get(cc.getType());
+		if (set == null) {
+			set = new LinkedHashSet<ComponentContainer>();
+			deferredTypes.put(cc.getType(), set);
+		}
+		set.add(cc);
+		viewport.observe(root);
+	}
+	
+	/** Forgets a deferred container; it has been created, or failed, or removed. */
+	private void undefer(ComponentContainer cc) {
+		Element root = cc.getRootElement();
+		deferred.remove(root);
+		if (deferredIds.get(root.getId()) == cc)
+			deferredIds.remove(root.getId());
+		LinkedHashSet<ComponentContainer> set = deferredTypes.get(cc.getType());
+		if (set != null) {
+			set.remove(cc);
+			if (set.size() == 0)
+				deferredTypes.remove(cc.getType());
+		}
+		if (viewport != null)
+			viewport.unobserve(root);
+		loading.remove(cc);
+	}
+	
+	/** Requests creation of deferred containers that aren't already being created. */
+	private void load(ArrayList<ComponentContainer> set) {
+		ArrayList<ComponentContainer> containers = new ArrayList<ComponentContainer>();
+		ArrayList<String> requestIds = new ArrayList<String>();
+		for (ComponentContainer cc : set) {
+			if (!loading.containsKey(cc)) {
+				loading.put(cc, new ArrayList<Component>());
+				if (viewport != null)
+					viewport.unobserve(cc.getRootElement());
 				String requestId = createRequestId(cc);
-				createComponent(cc, requestId);
+				loadingRequests.put(requestId, cc);
+				containers.add(cc);
+				requestIds.add(requestId);
+			}
+		}
+		if (containers.size() > 0)
+			createComponents(containers, requestIds);
+	}
+	
+	/** 
+	 * Forces a lazy component to be created because another component requires it.
+	 * <p>
+	 * The component is found by id, or if id is null, the first lazy component
+	 * of the given type is used. Returns false if there was no such component.
+	 */
+	boolean loadDeferred(String id, String type, Component waiting) {
+		ComponentContainer cc = null;
+		if (id != null)
+			cc = deferredIds.get(id);
+		else {
+			LinkedHashSet<ComponentContainer> set = deferredTypes.get(type);
+			if ((set != null) && (set.size() > 0))
+				cc = set.iterator().next();
+		}
+		if (cc != null) {
+			ArrayList<ComponentContainer> set = new ArrayList<ComponentContainer>();
+			set.add(cc);
+			load(set);
+			loading.get(cc).add(waiting);
+			waiting.waitForDeferred();
+		}
+		return(cc != null);
+	}
+	
+	/** 
+	 * Watches an element for inserted and removed content.
+	 * <p>
+	 * Once watching, there is no need to call parse() after changing the
+	 * content under root: inserted elements are collected until the next
+	 * frame, and then only those are parsed for new components. Components
+	 * whose root elements are removed are passed to removeComponent(); if
+	 * that fails (eg. because other components depend on them) it is logged.
+	 * <p>
+	 * Only one element can be watched at a time; on browsers without 
+	 * MutationObserver this does nothing and parse() is still required.
+	 */
+	public void watch(Element root) {
+		unwatch();
+		watchRoot = root;
+		watcher = new DomObserver(new DomObserver.Listener() {
+			public void onNodeAdded(Node node) {
+				if (node.getNodeType() == Node.ELEMENT_NODE) 
+					watchChanged(Element.as(node), inserted);
+			}
+			public void onNodeRemoved(Node node) {
+				if (node.getNodeType() == Node.ELEMENT_NODE) 
+					watchChanged(Element.as(node), removed);
+			}
+			public void onAttributeChanged(Element target, String name) {
+			}
+		});
+		watcher.observe(root, false);
+	}
+	
+	/** Stops watching for changes, if watch() was called. */
+	public void unwatch() {
+		if (watcher != null) {
+			watcher.disconnect();
+			watcher = null;
+			watchRoot = null;
+			inserted.clear();
+			removed.clear();
+		}
+	}
+	
+	/** Records a watched change, and makes sure it is dealt with in the next frame. */
+	private void watchChanged(Element e, ArrayList<Element> set) {
+		set.add(e);
+		if (!watchScheduled) {
+			watchScheduled = true;
+			AsyncScheduler.scheduleFrame(new ScheduledCommand() {
+				public void execute() {
+					watchFlush();
+					watchScheduled = false;
+				}
+			});
+		}
+	}
+	
+	/** Deals with the changes collected since the last frame. */
+	private void watchFlush() {
+		if (watcher != null) {
+			watcher.flush(); // Anything not yet delivered.
+			ArrayList<Element> gone = new ArrayList<Element>(removed);
+			ArrayList<Element> added = new ArrayList<Element>();
+			removed.clear();
+			for (Element e : inserted) {
+				if (watchRoot.isOrHasChild(e)) // Could have gone again since.
+					added.add(e);
 			}
+			inserted.clear();
+			for (Element e : gone) {
+				if (!watchRoot.isOrHasChild(e)) // Could have just been moved.
+					removeComponents(e);
+			}
+			if (added.size() > 0)
+				parseAll(added);
 		}
 	}
 	
-	/** Dispatches a request to the factory. */
-	private void createComponent(final ComponentContainer cc, final String requestId) {
+	/** 
+	 * Dispatches a batch of requests to the factory. 
+	 * <p>
+	 * The factory is told every type in the batch first, synchronously, so
+	 * it can start loading code for all of them at once.
+	 */
+	private void createComponents(final ArrayList<ComponentContainer> containers, final ArrayList<String> requestIds) {
 		final ComponentFactory factory = this.factory;
-		Timer deferredCallback = new Timer() {
-			@Override
-			public void run() {
-				factory.createComponent(cc, requestId);
+		HashSet<String> types = new HashSet<String>();
+		for (ComponentContainer cc : containers)
+			types.add(cc.getType());
+		factory.prefetch(types);
+		AsyncScheduler.schedule(new ScheduledCommand() {
+			public void execute() {
+				factory.createComponents(containers, requestIds);
 			}
-		};
-		deferredCallback.schedule(1); // Async invokation.
+		}); // Async invokation.
 	}
 	
-	/** Creates a unique request id. */
+	/** Creates a unique request id, and records the root as pending. */
 	private String createRequestId(ComponentContainer cc) {
-		Date now = new Date();
-		String rtn = "r" + Math.random() + "__t" + now.getTime() + "__c" + cc.getType();
-		componentRequests.add(rtn);
+		String rtn = componentRequests.add(cc.getType());
+		pendingRoots.put(cc.getRootElement(), rtn);
+		pendingRequests.put(rtn, cc.getRootElement());
 		return(rtn);
 	}
 	
+	/** 
+	 * Marks a request as done, and its root as no longer pending.
+	 * <p>
+	 * Returns how long the request took, as per ComponentRequests.complete().
+	 */
+	private double completeRequest(String requestId) {
+		Element root = pendingRequests.remove(requestId);
+		if ((root != null) && requestId.equals(pendingRoots.get(root)))
+			pendingRoots.remove(root);
+		return(componentRequests.complete(requestId));
+	}
+	
 	/** Returns a component by the ID of the root element. */
 	public Component getComponent(String id) {
 		Component rtn = idCache.get(id);
@@ -145,13 +592,18 @@ public class ComponentRegister {
 	/** Returns a the first component of the given type. */
 	public Component getComponentByType(String type) {
 		Component rtn = null;
-		for (Element root : elementCache.keySet()) {
-			Component c = getComponent(root);
-			if (c.getContainer().getType().equals(type)) {
-				rtn = c;
-				break;
-			}
-		}
+		LinkedHashSet<Component> set = typeCache.get(type);
+		if ((set != null) && (set.size() > 0))
+			rtn = set.iterator().next();
+		return(rtn);
+	}
+	
+	/** Returns all the components of the given type, in the order they were created. */
+	public ArrayList<Component> getComponentsByType(String type) {
+		ArrayList<Component> rtn = new ArrayList<Component>();
+		LinkedHashSet<Component> set = typeCache.get(type);
+		if (set != null)
+			rtn.addAll(set);
 		return(rtn);
 	}
 	
@@ -164,44 +616,249 @@ public class ComponentRegister {
 	/** Invoked async when a componet has been created. */
 	public void componentCreated(Component c, String requestId) {
 		Element root = c.getContainer().getRootElement();
-		elementCache.put(root, c);
+		Component old = elementCache.put(root, c);
+		if ((old != null) && (old != c)) 
+			replaceComponent(old);
+		components.add(c);
 		if ((root.getId() != null) && (!root.getId().equals("")))
 			idCache.put(root.getId(), c);
-		if(componentRequests.contains(requestId))
-			componentRequests.remove(requestId);
+		String type = c.getContainer().getType();
+		LinkedHashSet<Component> set = typeCache.get(type);
+		if (set == null) {
+			set = new LinkedHashSet<Component>();
+			typeCache.put(type, set);
+		}
+		set.add(c);
+		double elapsed = completeRequest(requestId);
+		if ((slowRequest > 0) && (elapsed > slowRequest))
+			ComponentLog.trace("Slow component creation: " + c + " took " + (long) elapsed + "ms");
+		ComponentContainer lazy = loadingRequests.remove(requestId);
+		if (lazy != null) {
+			ArrayList<Component> waiting = loading.get(lazy);
+			undefer(lazy);
+			for (Component w : waiting) 
+				w.deferredCreated(c);
+		}
 		if(componentRequests.size() == 0)
 			componentCreationComplete();
 	}
 	
 	/** Invoked async when a component could not be created. */
 	public void componentCreationFailed(String requestId) {
-		if(componentRequests.contains(requestId))
-			componentRequests.remove(requestId);
-		if(componentRequests.size() == 0)
-			componentCreationComplete();
+		completeRequest(requestId);
 		ComponentLog.trace("Failed to create component: " + requestId);
 		failed = true;
+		ComponentContainer lazy = loadingRequests.remove(requestId);
+		if (lazy != null) {
+			ArrayList<Component> waiting = loading.get(lazy);
+			undefer(lazy);
+			for (Component w : waiting) 
+				w.deferredCreated(null);
+		}
+		if(componentRequests.size() == 0)
+			componentCreationComplete();
+	}
+	
+	/** 
+	 * Drops a component that a new one has been created for, on the same root.
+	 * <p>
+	 * The root and its container now belong to the new component, so they
+	 * are not disposed of; everything else is, as per removeComponent().
+	 */
+	private void replaceComponent(Component old) {
+		try {
+			old.shutdown();
+		}
+		catch(Exception e) {
+			ComponentLog.trace("Unable to shutdown replaced component " + old + ": " + e.toString());
+		}
+		components.remove(old);
+		idleInit.remove(old);
+		removeType(old);
+		removeFromRun(old);
+		old.release();
 	}
 	
 	/** Invoked when all components have been created. */
 	private void componentCreationComplete() {
 		if (componentRequests.size() == 0) {
-			runList = runComponentInit();
+			runComponentInit();
 			componentReady(null); // First component.
 		}
 	}
 	
-	/** Inits all components. */
-	private ArrayList<Component> runComponentInit() {
-		ArrayList<Component> rtn = new ArrayList<Component>();
-		Set<Element> elements = elementCache.keySet();
-		for (Element key : elements) {
-			Component c = elementCache.get(key);
-			if (!c.active()) {
-				c.init();
-				rtn.add(c);
+	/** 
+	 * Inits all new components, and adds them to the run list and ready queue. 
+	 * <p>
+	 * Dependencies are only declared in init(), so components are only
+	 * queued once every new component has been initialized. Components 
+	 * from earlier parses that are still waiting keep their place, and
+	 * are not initialized a second time.
+	 */
+	private void runComponentInit() {
+		if (runList == null) {
+			runList = new LinkedHashSet<Component>();
+			runOrder = new HashMap<Component, Integer>();
+			priorities = new HashMap<Component, Integer>();
+			readyQueue = new PriorityQueue<Component>(11, runOrderComparator);
+			queued = new HashSet<Component>();
+			blocked = new ArrayList<Component>();
+		}
+		ArrayList<Component> added = new ArrayList<Component>();
+		ArrayList<Component> idle = new ArrayList<Component>();
+		for (Component c : components) {
+			if (!c.active() && !runList.contains(c) && !idleInit.contains(c)) {
+				if (c instanceof BackgroundComponent) {
+					idleInit.add(c);
+					idle.add(c);
+				}
+				else 
+					initComponent(c, false, added);
+			}
+		}
+		
+		// Background components that others now depend on can't wait, 
+		// whether or not they have been init()'ed yet.
+		ArrayList<Component> waiting = new ArrayList<Component>(idleInit);
+		waiting.addAll(background);
+		for (Component c : waiting) {
+			if ((idleInit.contains(c) || background.contains(c)) && hasCriticalDependant(c))
+				promoteBackground(c, added);
+		}
+		
+		// Only the new ones; the rest already have an idle slot coming.
+		for (final Component c : idle) {
+			if (idleInit.contains(c)) {
+				AsyncScheduler.scheduleIdle(new ScheduledCommand() {
+					public void execute() {
+						runComponentInitIdle(c);
+					}
+				});
+			}
+		}
+		
+		for (Component c : runList) 
+			promoteRequirements(c);
+		for (Component c : added) {
+			if (!c.isWaiting())
+				queueComponent(c);
+		}
+	}
+	
+	/** Inits a single component and adds it to the run list. */
+	private void initComponent(Component c, boolean idle, ArrayList<Component> added) {
+		c.init();
+		runOrder.put(c, runCount++);
+		priorities.put(c, c.getPriority());
+		runList.add(c);
+		if (idle)
+			background.add(c);
+		added.add(c);
+	}
+	
+	/** Inits a background component in an idle slot, unless it has been promoted or removed since. */
+	private void runComponentInitIdle(Component c) {
+		if (idleInit.remove(c) && components.contains(c)) {
+			ArrayList<Component> added = new ArrayList<Component>();
+			initComponent(c, true, added);
+			promoteRequirements(c);
+			if (!c.isWaiting())
+				queueComponent(c);
+			componentReady(null);
+		}
+	}
+	
+	/** Returns true if any component that isn't run in the background is waiting on this one. */
+	private boolean hasCriticalDependant(Component c) {
+		boolean rtn = false;
+		ArrayList<Component> dependants = c.getDependants();
+		if (dependants != null) {
+			for (Component d : dependants) {
+				if (runList.contains(d) && !background.contains(d)) {
+					rtn = true;
+					break;
+				}
+			}
+		}
+		return(rtn);
+	}
+	
+	/** 
+	 * Runs a background component, and everything it depends on, as normal.
+	 * <p>
+	 * Components still waiting for an idle init() are init()'ed immediately.
+	 */
+	private void promoteBackground(Component c, ArrayList<Component> added) {
+		if (idleInit.remove(c))
+			initComponent(c, false, added);
+		else
+			background.remove(c);
+		ArrayList<Component> requirements = c.getRequirements();
+		if (requirements != null) {
+			for (Component r : new ArrayList<Component>(requirements)) {
+				if (idleInit.contains(r) || background.contains(r))
+					promoteBackground(r, added);
+			}
+		}
+	}
+	
+	/** 
+	 * Raises the effective priority of everything the component waits on to its own.
+	 * <p>
+	 * Only components whose priority actually changes are visited, so each 
+	 * dependency chain is walked once for each distinct priority on it.
+	 */
+	private void promoteRequirements(Component c) {
+		ArrayList<Component> requirements = c.getRequirements();
+		if (requirements != null) {
+			int priority = priorities.get(c);
+			for (Component r : requirements) {
+				Integer current = priorities.get(r);
+				if ((current != null) && (current < priority)) {
+					// Re-queue, or the queue would be out of order.
+					boolean requeue = queued.contains(r);
+					if (requeue)
+						readyQueue.remove(r);
+					priorities.put(r, priority);
+					if (requeue)
+						readyQueue.add(r);
+					promoteRequirements(r);
+				}
+			}
+		}
+	}
+	
+	/** Adds a component with no outstanding component dependencies to the ready queue. */
+	private void queueComponent(Component c) {
+		if (!queued.contains(c)) {
+			queued.add(c);
+			readyQueue.add(c);
+		}
+	}
+	
+	/** 
+	 * Returns the next component that can be run, if any. 
+	 * <p>
+	 * Components waiting on assets or values are parked and checked
+	 * again each time this is called, in case the DOM has changed.
+	 */
+	private Component nextReadyComponent() {
+		for (Iterator<Component> i = blocked.iterator(); i.hasNext(); ) {
+			Component c = i.next();
+			if (c.getDependencyCount() == 0) {
+				i.remove();
+				queueComponent(c);
 			}
 		}
+		Component rtn = null;
+		while ((rtn == null) && (readyQueue.size() > 0)) {
+			Component c = readyQueue.poll();
+			queued.remove(c);
+			if (c.getDependencyCount() == 0) 
+				rtn = c;
+			else
+				blocked.add(c);
+		}
 		return(rtn);
 	}
 	
@@ -213,8 +870,11 @@ public class ComponentRegister {
 	 * which are ready to finish running.
 	 */
 	public void componentFailed(Component target) {
-		if (runList.contains(target))
-			runList.remove(target);
+		runList.remove(target);
+		runOrder.remove(target);
+		priorities.remove(target);
+		background.remove(target);
+		running.remove(target);
 		ComponentLog.trace("Failed trying to run component: " + target.toString());
 		componentReady(null);
 	}
@@ -226,14 +886,16 @@ public class ComponentRegister {
 	 * not a component; otherwise the notifyDependants() call is
 	 * made on the target.
 	 * <p>
-	 * After the notification, the next component with no dependencies
-	 * is found and run via async call; if none, the register stops.
+	 * After the notification, the next components with no dependencies
+	 * are found and run via async call, up to the concurrency limit; if 
+	 * there are none and nothing is still running, the register stops.
 	 */
 	public void componentReady(Component target) {
 		if (runList != null) {
 		
-			// Nothing is running if we got this callback.
-			running = null; 
+			// The target isn't running any more if we got this callback.
+			if (target != null)
+				running.remove(target);
 			
 			// This target has run, so it is considered a resolved
 			// dependency; notify any one depending on it, so our
@@ -241,27 +903,34 @@ public class ComponentRegister {
 			// free component to run.
 			if (target != null) {
 				target.notifyWaiting();
-				if (runList.contains(target))
-					runList.remove(target);
+				runList.remove(target);
+				runOrder.remove(target);
+				priorities.remove(target);
+				background.remove(target);
+				ArrayList<Component> dependants = target.getDependants();
+				if (dependants != null) {
+					for (Component c : dependants) {
+						if (runList.contains(c) && !c.isWaiting())
+							queueComponent(c);
+					}
+				}
 			}
 			
-			// Find next
+			// Start as many as we're allowed to.
 			Component next = null;
-			for (Component c : runList) {
-				if (c.getDependencyCount() == 0) {
-					next = c;
-					break;
+			while (((concurrency <= 0) || (running.size() < concurrency)) && ((next = nextReadyComponent()) != null)) {
+				if (background.contains(next))
+					runComponentIdle(next);
+				else {
+					running.add(next);
+					runComponentAsync(next);
 				}
 			}
 			
-			// More?
-			if (next != null)
-				runComponentAsync(next);
-			
-			// Done?
-			else {
+			// Done? Background components don't count.
+			if (running.size() == 0) {
 				// Stop wait for components to load.
-				if ((timer != null) && (runList.size() == 0)){
+				if ((timer != null) && (runList.size() == background.size())){
 					timer.cancel();
 					timer = null;
 				}
@@ -272,14 +941,43 @@ public class ComponentRegister {
 	
 	/** Dispatch a run component call async. */
 	private void runComponentAsync(final Component target) {
-		Timer t = new Timer() {
-			@Override
-			public void run() {
-				running = target;
+		AsyncScheduler.schedule(new ScheduledCommand() {
+			public void execute() {
 				target.run();
 			}
-		};
-		t.schedule(1); // Async run this.
+		}); // Async run this.
+	}
+	
+	/** Dispatch a run component call when the browser is idle. */
+	private void runComponentIdle(final Component target) {
+		AsyncScheduler.scheduleIdle(new ScheduledCommand() {
+			public void execute() {
+				target.run();
+			}
+		});
+	}
+	
+	/** 
+	 * Sets how many components may be running at once.
+	 * <p>
+	 * By default this is 1, and each component's run() only starts once the
+	 * previous one has called complete(). Components that wait on RPCs in 
+	 * run() serialize startup that way; a higher limit (or 0 for no limit) 
+	 * starts every component whose dependencies are resolved immediately, 
+	 * so startup takes about as long as the longest dependency chain.
+	 */
+	public void setConcurrency(int max) {
+		concurrency = max;
+	}
+	
+	/** 
+	 * Logs component creation requests that take longer than the given time.
+	 * <p>
+	 * This is optional; 0 (the default) turns it off. Requests that are still
+	 * outstanding are reported with their age by the timeout audit regardless.
+	 */
+	public void setSlowRequestThreshold(int milliseconds) {
+		slowRequest = milliseconds;
 	}
 	
 	/** 
@@ -324,11 +1022,13 @@ public class ComponentRegister {
 	private int componentAudit() {
 		int waiting = 0;
 		if (runList != null) {
-			if (running != null) {
-				ComponentLog.trace("Component:" + running + " is running. Did you forget to call complete()?");
+			for (Component c : running) {
+				ComponentLog.trace("Component:" + c + " is running. Did you forget to call complete()?");
 				++waiting;
 			}
 			for (Component c: runList) {
+				if (running.contains(c))
+					continue;
 				String component_msg = "Component:" + c + " is waiting: ";
                                 int count = 0;
 				ArrayList<String> missing = c.getDependencies();
@@ -345,7 +1045,7 @@ public class ComponentRegister {
 			}
 		}
 		if (componentRequests.size() != 0) {
-                    for(String c : componentRequests) {
+                    for(String c : componentRequests.describe()) {
                         ComponentLog.trace("Waiting on component request: " + c);
                     }
                     ComponentLog.trace("Some components may not be implemented by the factory or are taking a long time to load.");
@@ -356,17 +1056,93 @@ public class ComponentRegister {
 	/** 
 	 * Removes a specific component from the register; effectively turning it off. 
 	 * <p>
-	 * It's quite tricky to go through a cleanly rebind events and remove events, 
-	 * worry about components that depend on this one, etc., so none of that happens
-	 * here; handle it manually in the component's shutdown() call.
+	 * Once shutdown() succeeds the component is dropped from the run queues, 
+	 * and every frame, container and event listener for its elements (but not 
+	 * those of nested components) is disposed of; handlers bound through the 
+	 * twisted.client.events listeners are removed. Anything else, including
+	 * components that depend on this one, should be handled in shutdown().
 	 */
 	public void removeComponent(Component c) throws Exception {
 		c.shutdown();
 		try {
-			elementCache.remove(c.getContainer().getRootElement());
-			idCache.remove(c.getContainer().getRootElement().getId());
+			Element root = c.getContainer().getRootElement();
+			elementCache.remove(root);
+			components.remove(c);
+			idleInit.remove(c);
+			idCache.remove(root.getId());
+			removeType(c);
+			removeFromRun(c);
+			c.release();
+			ComponentFrame.dispose(root);
+			ComponentContainer.dispose(root);
 		}
 		catch(Exception e) {
+			ComponentLog.trace("Unable to release component " + c + ": " + e.toString());
+		}
+	}
+	
+	/** 
+	 * Returns the number of entries in the register's element, id, type 
+	 * and pending request caches; all of which should return to their 
+	 * previous size once added components are removed.
+	 */
+	public int getCacheSize() {
+		int rtn = elementCache.size() + components.size() + idCache.size() + typeCache.size();
+		rtn += componentRequests.size() + pendingRoots.size() + pendingRequests.size();
+		return(rtn);
+	}
+	
+	/** Removes a component from the run list and queues, if it is in them. */
+	private void removeFromRun(Component c) {
+		if (runList != null) {
+			runList.remove(c);
+			runOrder.remove(c);
+			if (queued.remove(c))
+				readyQueue.remove(c);
+			priorities.remove(c);
+			background.remove(c);
+			blocked.remove(c);
+			running.remove(c);
+		}
+	}
+	
+	/** Removes a component from the type cache. */
+	private void removeType(Component c) {
+		String type = c.getContainer().getType();
+		LinkedHashSet<Component> set = typeCache.get(type);
+		if (set != null) {
+			set.remove(c);
+			if (set.size() == 0)
+				typeCache.remove(type);
+		}
+	}
+	
+	/** 
+	 * Removes every component with a root element at or under the given element.
+	 * <p>
+	 * @see #removeComponent(Component) for details; components that fail to
+	 * shutdown are logged and left in place.
+	 */
+	public void removeComponents(Element root) {
+		ArrayList<Component> found = new ArrayList<Component>();
+		ArrayList<Element> roots = new ArrayList<Element>();
+		roots.add(root);
+		for (Element e : ComponentQuery.iterate("Component", root)) 
+			roots.add(e);
+		for (Element e : roots) {
+			Component c = getComponent(e);
+			if (c != null)
+				found.add(c);
+			else if (deferred.containsKey(e))
+				undefer(deferred.get(e));
+		}
+		for (Component target : found) {
+			try {
+				removeComponent(target);
+			}
+			catch(Exception e) {
+				ComponentLog.trace("Unable to remove component " + target + ": " + e.toString());
+			}
 		}
 	}
 	
@@ -377,8 +1153,7 @@ public class ComponentRegister {
 	 * is run on all components of the given type. 
 	 */
 	public void purgeComponents(String type) throws Exception {
-		Component c;
-		while ((c = getComponentByType(type)) != null) {
+		for (Component c : getComponentsByType(type)) {
 			removeComponent(c);
 		}
 	}
@@ -0,0 +1,227 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+
+import twisted.client.impl.ComponentQuery;
+
+/** 
+ * A compiled component template, for stamping out many instances.
+ * <p>
+ * ComponentContainer.injectComponentId(), injectComponentValue() and 
+ * injectComponentAsset() search the block they are given each time. A
+ * template is searched once, when it is compiled; the path to each slot
+ * (as element child indexes) is recorded, and instances are made with
+ * cloneNode() and written to directly:
+ * <pre>
+ * 		ComponentTemplate t = new ComponentTemplate(rowTemplate);
+ * 		ComponentTemplate.Batch b = t.batch();
+ * 		for (...) {
+ * 			ComponentTemplate.Instance i = b.add();
+ * 			i.setId("ComponentId-Row", "row" + n);
+ * 			i.setValue("Name", name);
+ * 		}
+ * 		b.appendTo(list);
+ * 		register.parse(list);
+ * </pre>
+ * Slots are found the same way as the inject calls; the first component 
+ * with the given ComponentId- class (including the template root), and the 
+ * first value or asset of each name that isn't inside a nested component.
+ */
+public class ComponentTemplate {
+	
+	/** A single copy of the template. */
+	public class Instance {
+		
+		/** The copy. */
+		private Element root;
+		
+		private Instance() {
+			root = template.cloneNode(true).cast();
+		}
+		
+		/** Returns the root element of the copy. */
+		public Element getElement() {
+			return(root);
+		}
+		
+		/** Sets the id of the component with the given ComponentId- class. */
+		public Instance setId(String target, String id) {
+			Element e = resolve(ids.get(target));
+			if (e != null) 
+				e.setId(id);
+			return(this);
+		}
+		
+		/** Sets the content of a value, by name. */
+		public Instance setValue(String name, String value) {
+			Element e = resolve(values.get(name));
+			if ((e != null) && (value != null))
+				e.setInnerHTML(value);
+			return(this);
+		}
+		
+		/** 
+		 * Replaces an asset, by name.
+		 * <p>
+		 * As per ComponentContainer.injectComponentAsset(), the asset is
+		 * given the ComponentAsset and ComponentId- classes if it doesn't 
+		 * have them. Each asset can only be replaced once per instance.
+		 */
+		public Instance setAsset(String name, Element asset) {
+			Element e = resolve(assets.get(name));
+			if ((e != null) && (asset != null)) {
+				if (!ComponentQuery.hasClass(asset, "ComponentAsset"))
+					asset.addClassName("ComponentAsset");
+				if (!ComponentQuery.hasClass(asset, "ComponentId-" + name))
+					asset.addClassName("ComponentId-" + name);
+				e.getParentElement().replaceChild(asset, e);
+			}
+			return(this);
+		}
+		
+		/** Follows a slot path from the root of the copy. */
+		private Element resolve(int[] path) {
+			Element rtn = null;
+			if (path != null) {
+				rtn = root;
+				for (int i = 0; (rtn != null) && (i < path.length); ++i) {
+					Element child = rtn.getFirstChildElement();
+					for (int j = path[i]; (child != null) && (j > 0); --j)
+						child = child.getNextSiblingElement();
+					rtn = child;
+				}
+			}
+			return(rtn);
+		}
+	}
+	
+	/** A set of instances that are inserted into the document together. */
+	public class Batch {
+		
+		/** The fragment instances are added to. */
+		private Node fragment = createFragment();
+		
+		private Batch() {
+		}
+		
+		/** Adds a new instance to the batch. */
+		public Instance add() {
+			Instance rtn = new Instance();
+			fragment.appendChild(rtn.getElement());
+			return(rtn);
+		}
+		
+		/** Appends every instance in the batch to parent, in one insertion. */
+		public void appendTo(Element parent) {
+			parent.appendChild(fragment);
+		}
+		
+		/** Inserts every instance in the batch before the given child of parent, in one insertion. */
+		public void insertBefore(Element parent, Node before) {
+			parent.insertBefore(fragment, before);
+		}
+	}
+	
+	/** The compiled copy of the template. */
+	private Element template;
+	
+	/** Paths to components, by ComponentId- class. */
+	private HashMap<String, int[]> ids = new HashMap<String, int[]>();
+	
+	/** Paths to values, by name. */
+	private HashMap<String, int[]> values = new HashMap<String, int[]>();
+	
+	/** Paths to assets, by name. */
+	private HashMap<String, int[]> assets = new HashMap<String, int[]>();
+	
+	/** 
+	 * Compiles a template.
+	 * <p>
+	 * The template is copied, so changes made to it afterwards don't
+	 * affect instances.
+	 */
+	public ComponentTemplate(Element template) {
+		this.template = template.cloneNode(true).cast();
+		if (ComponentQuery.hasClass(this.template, "Component"))
+			addComponent(this.template, new ArrayList<Integer>());
+		compile(this.template, new ArrayList<Integer>(), true);
+	}
+	
+	/** Creates a single instance; it isn't inserted anywhere. */
+	public Instance create() {
+		return(new Instance());
+	}
+	
+	/** Creates an empty batch of instances. */
+	public Batch batch() {
+		return(new Batch());
+	}
+	
+	/** Records the paths to the slots under e; owned is false inside nested components. */
+	private void compile(Element e, ArrayList<Integer> path, boolean owned) {
+		int index = 0;
+		for (Element child = e.getFirstChildElement(); child != null; child = child.getNextSiblingElement()) {
+			path.add(index++);
+			boolean component = ComponentQuery.hasClass(child, "Component");
+			if (component)
+				addComponent(child, path);
+			else if (owned) {
+				addSlot(child, path, "ComponentValue", values);
+				addSlot(child, path, "ComponentAsset", assets);
+			}
+			compile(child, path, owned && !component);
+			path.remove(path.size() - 1);
+		}
+	}
+	
+	/** Records a component under each of its ComponentId- classes, if not already found. */
+	private void addComponent(Element e, ArrayList<Integer> path) {
+		for (String c : e.getClassName().split(" ")) {
+			if (c.startsWith("ComponentId-") && !ids.containsKey(c))
+				ids.put(c, toArray(path));
+		}
+	}
+	
+	/** Records a value or asset under its name, if it is one and not already found. */
+	private void addSlot(Element e, ArrayList<Integer> path, String kind, HashMap<String, int[]> slots) {
+		if (ComponentQuery.hasClass(e, kind)) {
+			for (String c : e.getClassName().split(" ")) {
+				if (c.startsWith("ComponentId-")) {
+					String name = c.substring("ComponentId-".length());
+					if (!slots.containsKey(name))
+						slots.put(name, toArray(path));
+				}
+			}
+		}
+	}
+	
+	private static int[] toArray(ArrayList<Integer> path) {
+		int[] rtn = new int[path.size()];
+		for (int i = 0; i < rtn.length; ++i)
+			rtn[i] = path.get(i);
+		return(rtn);
+	}
+	
+	private static native Node createFragment() /*-{
+		return($doc.createDocumentFragment());
+	}-*/;
+}
@@ -0,0 +1,42 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/** 
+ * Marks a component class for use by a GeneratedComponentFactory.
+ * <p>
+ * The value is the component type, as found in the ComponentId- class
+ * on the root element. The class must have a constructor that takes a 
+ * single ComponentContainer.
+ * <p>
+ * If split is true, the code for the component is loaded via its own
+ * GWT.runAsync() split point the first time the type is found on a page.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface ComponentType {
+	
+	/** The component type. */
+	String value();
+	
+	/** If the component should be put in its own split point. */
+	boolean split() default false;
+}
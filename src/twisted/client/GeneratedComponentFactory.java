@@ -0,0 +1,127 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Set;
+
+import com.google.gwt.core.client.prefetch.Prefetcher;
+import com.google.gwt.core.client.prefetch.RunAsyncCode;
+
+/**
+ * Factory built at compile time from @ComponentType annotated components.
+ * <p>
+ * Rather than writing a factory by hand, declare an abstract subclass of
+ * this one and create it with GWT.create(); every non-abstract Component
+ * subclass with a @ComponentType annotation is added to it:
+ * <pre>
+ * public abstract class MyFactory extends GeneratedComponentFactory {}
+ * ...
+ * ComponentRegister r = new ComponentRegister((ComponentFactory) GWT.create(MyFactory.class));
+ * </pre>
+ * Types are found with a single map lookup, and each parse() makes one 
+ * call per type found, so split point types are only loaded once. The
+ * split points for every type found by a parse() are prefetched together.
+ */
+public abstract class GeneratedComponentFactory extends ComponentFactory {
+	
+	/** Creates all the components of one type; implemented by generated code. */
+	protected interface ComponentCreator {
+		
+		/** roots.get(i) is the container for requestIds.get(i). */
+		public void create(List<ComponentContainer> roots, List<String> requestIds);
+	}
+	
+	/** Creators, by component type. */
+	private HashMap<String, ComponentCreator> creators = new HashMap<String, ComponentCreator>();
+	
+	/** Split points, by component type. */
+	private HashMap<String, RunAsyncCode> splitPoints = new HashMap<String, RunAsyncCode>();
+	
+	/** Adds a creator for a type; called by the generated constructor. */
+	protected void register(String type, ComponentCreator creator) {
+		creators.put(type, creator);
+	}
+	
+	/** Adds a creator for a type that is in its own split point; called by the generated constructor. */
+	protected void register(String type, ComponentCreator creator, RunAsyncCode splitPoint) {
+		creators.put(type, creator);
+		splitPoints.put(type, splitPoint);
+	}
+	
+	/** Returns true if the factory can create components of the given type. */
+	public boolean hasType(String type) {
+		return(creators.containsKey(type));
+	}
+	
+	/** Starts downloading the split points of all the given types that aren't loaded yet. */
+	@Override
+	public void prefetch(Set<String> types) {
+		ArrayList<RunAsyncCode> set = new ArrayList<RunAsyncCode>();
+		for (String type : types) {
+			RunAsyncCode code = splitPoints.get(type);
+			if ((code != null) && !code.isLoaded())
+				set.add(code);
+		}
+		if (set.size() > 0)
+			Prefetcher.prefetch(set);
+	}
+	
+	@Override
+	public void createComponent(ComponentContainer root, String requestId) {
+		ArrayList<ComponentContainer> roots = new ArrayList<ComponentContainer>();
+		ArrayList<String> requestIds = new ArrayList<String>();
+		roots.add(root);
+		requestIds.add(requestId);
+		createComponents(roots, requestIds);
+	}
+	
+	/** Groups the roots by type, and makes one call to the creator of each type. */
+	@Override
+	public void createComponents(List<ComponentContainer> roots, List<String> requestIds) {
+		HashMap<String, ArrayList<ComponentContainer>> typeRoots = new HashMap<String, ArrayList<ComponentContainer>>();
+		HashMap<String, ArrayList<String>> typeIds = new HashMap<String, ArrayList<String>>();
+		for (int i = 0; i < roots.size(); ++i) {
+			ComponentContainer root = roots.get(i);
+			String type = root.getType();
+			if (!creators.containsKey(type)) {
+				ComponentLog.trace("No @ComponentType for type " + type);
+				componentCreationFailed(root, requestIds.get(i));
+			}
+			else {
+				ArrayList<ComponentContainer> set = typeRoots.get(type);
+				if (set == null) {
+					set = new ArrayList<ComponentContainer>();
+					typeRoots.put(type, set);
+					typeIds.put(type, new ArrayList<String>());
+				}
+				set.add(root);
+				typeIds.get(type).add(requestIds.get(i));
+			}
+		}
+		for (String type : typeRoots.keySet()) 
+			creators.get(type).create(typeRoots.get(type), typeIds.get(type));
+	}
+	
+	/** Called by generated code when a split point fails to load. */
+	protected void componentsFailed(List<ComponentContainer> roots, List<String> requestIds, Throwable reason) {
+		ComponentLog.exception(reason);
+		for (int i = 0; i < roots.size(); ++i) 
+			componentCreationFailed(roots.get(i), requestIds.get(i));
+	}
+}
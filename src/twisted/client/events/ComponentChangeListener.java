@@ -16,10 +16,9 @@
 
 package twisted.client.events;
 
-import java.util.HashMap;
-
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.ChangeEvent;
@@ -32,7 +31,7 @@ import com.google.gwt.event.shared.HandlerRegistration;
 public class ComponentChangeListener extends ComponentListener implements HasChangeHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentChangeListener> localCache = new HashMap<Element, ComponentChangeListener>();
+	private static ElementMap<ComponentChangeListener> localCache = new ElementMap<ComponentChangeListener>();
 
 	protected ComponentChangeListener(Element root) {
 		super(root);
@@ -48,6 +47,18 @@ public class ComponentChangeListener extends ComponentListener implements HasCha
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
 	@Override
 	public HandlerRegistration addChangeHandler(ChangeHandler handler) {
     return addDomHandler(handler, ChangeEvent.getType());
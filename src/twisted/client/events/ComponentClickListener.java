@@ -16,10 +16,9 @@
 
 package twisted.client.events;
 
-import java.util.HashMap;
-
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.ClickEvent;
@@ -32,7 +31,7 @@ import com.google.gwt.event.shared.HandlerRegistration;
 public class ComponentClickListener extends ComponentListener implements HasClickHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentClickListener> localCache = new HashMap<Element, ComponentClickListener>();
+	private static ElementMap<ComponentClickListener> localCache = new ElementMap<ComponentClickListener>();
 
 	protected ComponentClickListener(Element root) {
 		super(root);
@@ -53,6 +52,18 @@ public class ComponentClickListener extends ComponentListener implements HasClic
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
   @Override
   public void fireEvent(GwtEvent<?> event) {
   }
@@ -16,10 +16,9 @@
 
 package twisted.client.events;
 
-import java.util.HashMap;
-
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.BlurEvent;
@@ -34,7 +33,7 @@ import com.google.gwt.event.shared.HandlerRegistration;
 public class ComponentFocusListener extends ComponentListener implements HasAllFocusHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentFocusListener> localCache = new HashMap<Element, ComponentFocusListener>();
+	private static ElementMap<ComponentFocusListener> localCache = new ElementMap<ComponentFocusListener>();
 
 	protected ComponentFocusListener(Element root) {
 		super(root);
@@ -50,6 +49,18 @@ public class ComponentFocusListener extends ComponentListener implements HasAllF
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
 	@Override
 	public HandlerRegistration addFocusHandler(FocusHandler handler) {
         return addDomHandler(handler, FocusEvent.getType());
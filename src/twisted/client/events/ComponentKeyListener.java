@@ -16,10 +16,9 @@
 
 package twisted.client.events;
 
-import java.util.HashMap;
-
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.HasAllKeyHandlers;
@@ -36,7 +35,7 @@ import com.google.gwt.event.shared.HandlerRegistration;
 public class ComponentKeyListener extends ComponentListener implements HasAllKeyHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentKeyListener> localCache = new HashMap<Element, ComponentKeyListener>();
+	private static ElementMap<ComponentKeyListener> localCache = new ElementMap<ComponentKeyListener>();
 
 	protected ComponentKeyListener(Element root) {
 		super(root);
@@ -52,6 +51,18 @@ public class ComponentKeyListener extends ComponentListener implements HasAllKey
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
 	@Override
 	public HandlerRegistration addKeyUpHandler(KeyUpHandler handler) {
         return addDomHandler(handler, KeyUpEvent.getType());
@@ -16,10 +16,9 @@
 
 package twisted.client.events;
 
-import java.util.HashMap;
-
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.LoadEvent;
@@ -32,7 +31,7 @@ import com.google.gwt.event.shared.HandlerRegistration;
 public class ComponentLoadListener extends ComponentListener implements HasLoadHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentLoadListener> localCache = new HashMap<Element, ComponentLoadListener>();
+	private static ElementMap<ComponentLoadListener> localCache = new ElementMap<ComponentLoadListener>();
 
 	protected ComponentLoadListener(Element root) {
 		super(root);
@@ -48,6 +47,18 @@ public class ComponentLoadListener extends ComponentListener implements HasLoadH
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
 	@Override
 	public HandlerRegistration addLoadHandler(LoadHandler handler) {
     return addDomHandler(handler, LoadEvent.getType());
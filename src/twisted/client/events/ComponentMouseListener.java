@@ -16,10 +16,9 @@
 
 package twisted.client.events;
 
-import java.util.HashMap;
-
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.HasAllMouseHandlers;
@@ -42,7 +41,7 @@ import com.google.gwt.event.shared.HandlerRegistration;
 public class ComponentMouseListener extends ComponentListener implements HasAllMouseHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentMouseListener> localCache = new HashMap<Element, ComponentMouseListener>();
+	private static ElementMap<ComponentMouseListener> localCache = new ElementMap<ComponentMouseListener>();
 
 	protected ComponentMouseListener(Element root) {
 		super(root);
@@ -58,6 +57,18 @@ public class ComponentMouseListener extends ComponentListener implements HasAllM
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
 	@Override
 	public HandlerRegistration addMouseDownHandler(MouseDownHandler handler) {
     return addDomHandler(handler, MouseDownEvent.getType());
@@ -17,11 +17,11 @@
 package twisted.client.events;
 
 import java.util.ArrayList;
-import java.util.HashMap;
 
 import twisted.client.events.handlers.RightClickHandler;
 import twisted.client.impl.ComponentFrame;
 import twisted.client.impl.ComponentListener;
+import twisted.client.utils.ElementMap;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.NativeEvent;
@@ -33,7 +33,7 @@ import com.google.gwt.event.shared.HasHandlers;
 public class ComponentRightClickListener extends ComponentListener implements HasHandlers {
 
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentRightClickListener> localCache = new HashMap<Element, ComponentRightClickListener>();
+	private static ElementMap<ComponentRightClickListener> localCache = new ElementMap<ComponentRightClickListener>();
 
 	/** Set of click listeners for this object. */
 	private ArrayList<RightClickHandler> handlers = new ArrayList<RightClickHandler>();
@@ -53,6 +53,20 @@ public class ComponentRightClickListener extends ComponentListener implements Ha
 		return(rtn);
 	}
 
+	/** Removes the listener from the cache, once its handlers are removed. */
+	@Override
+	protected void dispose() {
+		super.dispose();
+		handlers.clear();
+		unbindEventHandler(getRootElement());
+		localCache.remove(getRootElement());
+	}
+
+	/** Returns the number of cached listeners. */
+	public static int getCacheSize() {
+		return(localCache.size());
+	}
+
 	public HandlerRegistration addRightClickHandler(final RightClickHandler handler) {
 	  HandlerRegistration rtn = new HandlerRegistration() {
       @Override
@@ -79,6 +93,11 @@ public class ComponentRightClickListener extends ComponentListener implements Ha
     };
   }-*/;
 
+  /** Unbinds the right click event handler. */
+  private native void unbindEventHandler(Element target) /*-{
+    target.oncontextmenu = null;
+  }-*/;
+
   @Override
   public void fireEvent(GwtEvent<?> event) {
   }
@@ -16,11 +16,13 @@
 
 package twisted.client.impl;
 
-import java.util.HashMap;
+import java.util.ArrayList;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.user.client.ui.AbsolutePanel;
 
+import twisted.client.utils.ElementMap;
+
 /** 
  * Converts arbitrary Elements into valid GWT containers.
  * <p>
@@ -35,11 +37,14 @@ import com.google.gwt.user.client.ui.AbsolutePanel;
 public class ComponentFrame extends AbsolutePanel {
 	
 	/** Click listener cache. */
-	private static HashMap<Element, ComponentFrame> cache = new HashMap<Element, ComponentFrame>();
+	private static ElementMap<ComponentFrame> cache = new ElementMap<ComponentFrame>();
 	
 	/** Internal element. */
 	protected Element root = null;
 	
+	/** Event listeners bound through this frame, if any. */
+	private ArrayList<ComponentListener> listeners = null;
+	
 	/** 
 	 * Creates a component containers from an element. 
 	 * <p>
@@ -65,4 +70,57 @@ public class ComponentFrame extends AbsolutePanel {
 		}
 		return(rtn);
 	}
+	
+	/** Records a listener bound through this frame, so it is disposed with it. */
+	void addListener(ComponentListener listener) {
+		if (listeners == null)
+			listeners = new ArrayList<ComponentListener>();
+		listeners.add(listener);
+	}
+	
+	/** Disposes of any listeners, and detaches the frame from its element. */
+	protected void dispose() {
+		if (listeners != null) {
+			for (ComponentListener l : listeners)
+				l.dispose();
+			listeners = null;
+		}
+		if (isAttached())
+			onDetach();
+	}
+	
+	/** 
+	 * Disposes of the frames, and their listeners, for every element that 
+	 * belongs to the component at root.
+	 * <p>
+	 * Elements inside nested components are left alone. 
+	 */
+	public static void dispose(Element root) {
+		for (Element e : getOwnedElements(root)) {
+			ComponentFrame frame = cache.remove(e);
+			if (frame != null)
+				frame.dispose();
+		}
+	}
+	
+	/** 
+	 * Returns root, and every element under it that isn't part of a nested
+	 * component; the elements whose cache entries belong to the component.
+	 */
+	protected static ArrayList<Element> getOwnedElements(Element root) {
+		ArrayList<Element> rtn = new ArrayList<Element>();
+		rtn.add(root);
+		ComponentWalker walker = new ComponentWalker(root, true);
+		Element e;
+		while ((e = walker.next()) != null) {
+			if (!ComponentQuery.hasClass(e, ComponentQuery.COMPONENT))
+				rtn.add(e);
+		}
+		return(rtn);
+	}
+	
+	/** Returns the number of cached frames. */
+	public static int getCacheSize() {
+		return(cache.size());
+	}
 }
@@ -0,0 +1,260 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.impl;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.HashMap;
+import java.util.HashSet;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+import com.google.gwt.dom.client.NodeList;
+
+import twisted.client.utils.ElementMap;
+
+/**
+ * Live index of the document body, by class name and by id.
+ * <p>
+ * The index is built once by enable() and then kept current from
+ * MutationObserver records, so ComponentQuery can answer lookups on
+ * the document without walking the DOM.
+ * <p>
+ * Only elements attached under the document body are covered; queries
+ * on detached elements (eg. templates) still walk the DOM, as do all
+ * queries on browsers without MutationObserver.
+ * <p>
+ * Indexed elements are held strongly, until their removal is observed.
+ */
+public class ComponentIndex implements DomObserver.Listener {
+
+	/** The active index, if any. */
+	private static ComponentIndex instance = null;
+
+	/** Document order comparator for results. */
+	private static final Comparator<Element> DOCUMENT_ORDER = new Comparator<Element>() {
+		public int compare(Element a, Element b) {
+			return(compareDocumentPosition(a, b));
+		}
+	};
+
+	/**
+	 * Above this many candidates, class lookups under a fragment of the root
+	 * ask the browser for the fragment's own matches instead of filtering and
+	 * sorting every indexed element with the class.
+	 */
+	private static final int FILTER_LIMIT = 64;
+
+	/** The indexed root. */
+	private Element root = null;
+
+	/** Elements by class name token. */
+	private HashMap<String, HashSet<Element>> classes = new HashMap<String, HashSet<Element>>();
+
+	/** Elements by id. */
+	private HashMap<String, HashSet<Element>> ids = new HashMap<String, HashSet<Element>>();
+
+	/**
+	 * The class name and id each element was indexed with.
+	 * <p>
+	 * Attributes can change before the records arrive, so entries are
+	 * always removed using the values they were added with.
+	 */
+	private ElementMap<String[]> indexed = new ElementMap<String[]>();
+
+	/** Change observer. */
+	private DomObserver observer = null;
+
+	protected ComponentIndex(Element root) {
+		this.root = root;
+		observer = new DomObserver(this);
+		observer.observe(root, true);
+		NodeList<Element> all = root.getElementsByTagName("*");
+		for (int i = 0; i < all.getLength(); ++i)
+			index(all.getItem(i));
+	}
+
+	/**
+	 * Builds the index for the document body, if the browser supports it.
+	 * <p>
+	 * Returns true if the index is active.
+	 */
+	public static boolean enable() {
+		if ((instance == null) && DomObserver.isSupported())
+			instance = new ComponentIndex(Document.get().getBody());
+		return(instance != null);
+	}
+
+	/** Stops maintaining the index and discards it. */
+	public static void disable() {
+		if (instance != null) {
+			instance.observer.disconnect();
+			instance = null;
+		}
+	}
+
+	/** Returns the active index, or null if it has not been enabled. */
+	public static ComponentIndex get() {
+		return(instance);
+	}
+
+	/** Returns true if lookups under the given element can be answered from the index. */
+	public boolean covers(Element target) {
+		return((target != null) && root.isOrHasChild(target));
+	}
+
+	/** 
+	 * Returns the elements under target (not including it) with the given class, in document order.
+	 * <p>
+	 * Lookups on the whole root are answered from the index; lookups on a
+	 * fragment are too, unless so many elements have the class that querying
+	 * the fragment itself is cheaper.
+	 */
+	public ArrayList<Element> getByClass(String classname, Element target) {
+		ArrayList<Element> rtn = null;
+		observer.flush();
+		HashSet<Element> set = classes.get(classname);
+		if ((target != root) && (set != null) && (set.size() > FILTER_LIMIT)) {
+			NodeList<Element> found = getElementsByClassName(target, classname);
+			rtn = new ArrayList<Element>(found.getLength());
+			for (int i = 0; i < found.getLength(); ++i)
+				rtn.add(found.getItem(i));
+		}
+		else
+			rtn = filter(set, target);
+		return(rtn);
+	}
+
+	/** Returns the elements under target (not including it) with the given id, in document order. */
+	public ArrayList<Element> getById(String id, Element target) {
+		observer.flush();
+		return(filter(ids.get(id), target));
+	}
+
+	/** Returns the members of set under target, sorted into document order. */
+	private ArrayList<Element> filter(HashSet<Element> set, Element target) {
+		ArrayList<Element> rtn = new ArrayList<Element>();
+		if (set != null) {
+			if (target == root) {
+				rtn.addAll(set);
+				rtn.remove(root);
+			}
+			else {
+				for (Element e : set) {
+					if ((e != target) && target.isOrHasChild(e))
+						rtn.add(e);
+				}
+			}
+			if (rtn.size() > 1)
+				Collections.sort(rtn, DOCUMENT_ORDER);
+		}
+		return(rtn);
+	}
+
+	@Override
+	public void onNodeAdded(Node node) {
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			Element e = Element.as(node);
+			index(e);
+			NodeList<Element> all = e.getElementsByTagName("*");
+			for (int i = 0; i < all.getLength(); ++i)
+				index(all.getItem(i));
+		}
+	}
+
+	@Override
+	public void onNodeRemoved(Node node) {
+		if (node.getNodeType() == Node.ELEMENT_NODE) {
+			Element e = Element.as(node);
+			unindex(e);
+			NodeList<Element> all = e.getElementsByTagName("*");
+			for (int i = 0; i < all.getLength(); ++i)
+				unindex(all.getItem(i));
+		}
+	}
+
+	@Override
+	public void onAttributeChanged(Element target, String name) {
+		if (indexed.containsKey(target)) {
+			unindex(target);
+			index(target);
+		}
+	}
+
+	/** Adds an element to the index, replacing any existing entry. */
+	private void index(Element e) {
+		unindex(e);
+		String classname = e.getClassName();
+		String id = e.getId();
+		indexed.put(e, new String[] { classname, id });
+		if (classname != null) {
+			for (String token : classname.split("\\s+")) {
+				if (token.length() > 0)
+					add(classes, token, e);
+			}
+		}
+		if ((id != null) && (id.length() > 0))
+			add(ids, id, e);
+	}
+
+	/** Removes an element from the index, if it is there. */
+	private void unindex(Element e) {
+		String[] values = indexed.remove(e);
+		if (values != null) {
+			if (values[0] != null) {
+				for (String token : values[0].split("\\s+")) {
+					if (token.length() > 0)
+						remove(classes, token, e);
+				}
+			}
+			if ((values[1] != null) && (values[1].length() > 0))
+				remove(ids, values[1], e);
+		}
+	}
+
+	private static void add(HashMap<String, HashSet<Element>> map, String key, Element e) {
+		HashSet<Element> set = map.get(key);
+		if (set == null) {
+			set = new HashSet<Element>();
+			map.put(key, set);
+		}
+		set.add(e);
+	}
+
+	private static void remove(HashMap<String, HashSet<Element>> map, String key, Element e) {
+		HashSet<Element> set = map.get(key);
+		if (set != null) {
+			set.remove(e);
+			if (set.size() == 0)
+				map.remove(key);
+		}
+	}
+
+	/** Native class lookup; always available where MutationObserver is. */
+	private static native NodeList<Element> getElementsByClassName(Element target, String classname) /*-{
+		return(target.getElementsByClassName(classname));
+	}-*/;
+
+	/** Orders two elements by their position in the document. */
+	private static native int compareDocumentPosition(Element a, Element b) /*-{
+		if (a === b)
+			return(0);
+		return((a.compareDocumentPosition(b) & 4) ? -1 : 1); // 4: b follows a
+	}-*/;
+}
@@ -16,6 +16,7 @@
 
 package twisted.client.impl;
 
+import java.util.ArrayList;
 
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.event.dom.client.DomEvent;
@@ -29,14 +30,42 @@ public class ComponentListener {
   /** ComponentFrame for this listener. */
   private ComponentFrame frame = null;
 
+  /** Handlers bound through this listener that are still bound. */
+  private ArrayList<HandlerRegistration> registrations = new ArrayList<HandlerRegistration>();
+
   /** Creates an instance from an element. */
   protected ComponentListener(Element e) {
     frame = ComponentFrame.get(e);
+    frame.addListener(this);
   }
 
 	/** Binds a dom handler */
 	protected <H extends EventHandler> HandlerRegistration addDomHandler(H handler, DomEvent.Type<H> type) {
-	  return(frame.addDomHandler(handler, type));
+	  final HandlerRegistration bound = frame.addDomHandler(handler, type);
+	  HandlerRegistration rtn = new HandlerRegistration() {
+	    public void removeHandler() {
+	      if (registrations.remove(this))
+	        bound.removeHandler();
+	    }
+	  };
+	  registrations.add(rtn);
+	  return(rtn);
+	}
+
+	/** Returns the element this listener is for. */
+	protected Element getRootElement() {
+	  return(frame.getRootElement());
+	}
+
+	/** 
+	 * Removes every handler bound through this listener.
+	 * <p>
+	 * Called when the frame is disposed of; subclasses should also remove
+	 * the listener from their cache.
+	 */
+	protected void dispose() {
+	  for (HandlerRegistration r : new ArrayList<HandlerRegistration>(registrations))
+	    r.removeHandler();
 	}
 
 	/** Fire event dummy function. */
@@ -0,0 +1,153 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsArrayInteger;
+import com.google.gwt.core.client.JsArrayString;
+import com.google.gwt.dom.client.Element;
+
+/**
+ * Overlay for one component in a server written manifest.
+ * <p>
+ * Each entry is in the form:
+ * <pre>
+ * 		{ "t": type, "i": id, "p": path, "v": { name: [ path, ... ] }, "a": { name: [ path, ... ] } }
+ * </pre>
+ * Where a path is an array of element child indexes; the component path
+ * is from the manifest root (usually the body), and value and asset paths 
+ * are from the component root. See twisted.server.ComponentManifest.
+ */
+public class ComponentManifestEntry extends JavaScriptObject {
+	
+	protected ComponentManifestEntry() {
+	}
+	
+	/** Returns the manifest stored in the given global variable, or null if there isn't one. */
+	public static native JsArray<ComponentManifestEntry> read(String name) /*-{
+		var rtn = $wnd[name];
+		return(rtn ? rtn : null);
+	}-*/;
+	
+	/** Returns the component type. */
+	public final native String getType() /*-{
+		return(this.t);
+	}-*/;
+	
+	/** Returns the root element id, or null. */
+	public final native String getId() /*-{
+		return(this.i ? this.i : null);
+	}-*/;
+	
+	/** Returns the path to the component root element. */
+	public final native JsArrayInteger getPath() /*-{
+		return(this.p);
+	}-*/;
+	
+	/** Returns the values of the component, by name; or null if any path doesn't match the DOM. */
+	public final HashMap<String, ArrayList<Element>> getValues(Element root) {
+		return(resolveAll(getMap("v"), root, "ComponentValue"));
+	}
+	
+	/** Returns the assets of the component, by name; or null if any path doesn't match the DOM. */
+	public final HashMap<String, ArrayList<Element>> getAssets(Element root) {
+		return(resolveAll(getMap("a"), root, "ComponentAsset"));
+	}
+	
+	/** 
+	 * Returns true if root is the element this entry describes.
+	 * <p>
+	 * That is, it is a component root of the right type, with the right id.
+	 */
+	public final boolean matches(Element root) {
+		boolean rtn = (root != null) && ComponentQuery.hasClass(root, "Component") && ComponentQuery.hasClass(root, "ComponentId-" + getType());
+		if (rtn) {
+			String id = root.getId();
+			if (getId() != null)
+				rtn = getId().equals(id);
+			else
+				rtn = (id == null) || id.equals("");
+		}
+		return(rtn);
+	}
+	
+	/** 
+	 * Follows a path of element child indexes from root.
+	 * <p>
+	 * Returns null if the path doesn't match the DOM.
+	 */
+	public static Element resolve(Element root, JsArrayInteger path) {
+		Element rtn = root;
+		for (int i = 0; (rtn != null) && (i < path.length()); ++i) {
+			Element child = rtn.getFirstChildElement();
+			for (int j = path.get(i); (child != null) && (j > 0); --j)
+				child = child.getNextSiblingElement();
+			rtn = child;
+		}
+		return(rtn);
+	}
+	
+	/** 
+	 * Resolves each named set of paths.
+	 * <p>
+	 * Every element found must have the kind class (ComponentValue or 
+	 * ComponentAsset) and the ComponentId- class for its name; if any 
+	 * doesn't, or a path doesn't lead anywhere, null is returned.
+	 */
+	private static HashMap<String, ArrayList<Element>> resolveAll(JavaScriptObject map, Element root, String kind) {
+		HashMap<String, ArrayList<Element>> rtn = new HashMap<String, ArrayList<Element>>();
+		if (map != null) {
+			JsArrayString names = getNames(map);
+			for (int i = 0; (rtn != null) && (i < names.length()); ++i) {
+				JsArray<JsArrayInteger> paths = getPaths(map, names.get(i));
+				ArrayList<Element> set = new ArrayList<Element>();
+				for (int j = 0; (set != null) && (j < paths.length()); ++j) {
+					Element e = resolve(root, paths.get(j));
+					if ((e != null) && ComponentQuery.hasClass(e, kind) && ComponentQuery.hasClass(e, "ComponentId-" + names.get(i)))
+						set.add(e);
+					else
+						set = null;
+				}
+				if (set != null)
+					rtn.put(names.get(i), set);
+				else
+					rtn = null;
+			}
+		}
+		return(rtn);
+	}
+	
+	private final native JavaScriptObject getMap(String key) /*-{
+		return(this[key] ? this[key] : null);
+	}-*/;
+	
+	private static native JsArrayString getNames(JavaScriptObject map) /*-{
+		var rtn = [];
+		for (var name in map) {
+			if (map.hasOwnProperty(name))
+				rtn.push(name);
+		}
+		return(rtn);
+	}-*/;
+	
+	private static native JsArray<JsArrayInteger> getPaths(JavaScriptObject map, String name) /*-{
+		return(map[name]);
+	}-*/;
+}
@@ -26,7 +26,14 @@ import com.google.gwt.dom.client.NodeList;
 /** 
  * Custom query implementation. 
  * <p>
- * TODO: ComponentQuery: Once GWT supports getElementsByClassName, use that.
+ * If ComponentIndex has been enabled, queries on the attached document 
+ * are answered from the index. Otherwise class queries use the browser's 
+ * native getElementsByClassName() or querySelectorAll() when they are 
+ * available; support is detected the first time a query is made. Failing
+ * that (and for id queries) the DOM is walked manually. Either way the 
+ * results are in document order.
+ * <p>
+ * GWT doesn't expose getElementsByClassName itself yet, hence the JSNI.
  * see http://code.google.com/p/google-web-toolkit/issues/detail?id=3441
  */
 public class ComponentQuery {
@@ -37,8 +44,20 @@ public class ComponentQuery {
 	/** Query type. */
 	public enum QueryType { CLASS, ID };
 	
-	/** Node list stack. */
-	private static ArrayList<NodeList<Node>> children = new ArrayList<NodeList<Node>>();
+	/** Native query support; -1 until first checked. */
+	private static int nativeSupport = -1;
+	
+	/** Native query support values. */
+	private static final int NATIVE_NONE = 0;
+	private static final int NATIVE_CLASSNAME = 1;
+	private static final int NATIVE_SELECTOR = 2;
+	
+	/** Class marking the root element of a component. */
+	static final String COMPONENT = "Component";
+	
+	/** If native queries may be used at all. */
+	private static boolean nativeEnabled = true;
+	
 	
 	protected ComponentQuery(ArrayList<Element> nodes) {
 		this.nodes = nodes;
@@ -64,36 +83,138 @@ public class ComponentQuery {
 	public static ComponentQuery query(String id, Element root, QueryType type) {
 		ComponentQuery rtn = null;
 		if (root != null) {
-			ArrayList<Element> rtnSet = new ArrayList<Element>();
-			rtn =  new ComponentQuery(rtnSet);
-			children.add(root.getChildNodes());
-			while(children.size() > 0) {
-				NodeList<Node> set = children.get(0);
-				children.remove(set);
-				for (int i = 0; i < set.getLength(); ++i) {
-					Node n = set.getItem(i);
-					if (n.getNodeType() == Node.ELEMENT_NODE) {
-						if (n.hasChildNodes()) 
-							children.add(n.getChildNodes());
-						switch(type) {
-  						case ID:
-  						  if (matchesIdTarget(n, id))
-    							rtnSet.add(Element.as(n));
-  						  break;
-  						case CLASS:
-    						if (matchesClassTarget(n, id)) 
-    							rtnSet.add(Element.as(n));
-    						break;
-						}
-					}
-				}
+			ArrayList<Element> rtnSet = null;
+			ComponentIndex index = ComponentIndex.get();
+			if ((index != null) && index.covers(root)) 
+				rtnSet = type == QueryType.CLASS ? index.getByClass(id, root) : index.getById(id, root);
+			else if ((type == QueryType.CLASS) && canQueryNative(id))
+				rtnSet = queryNative(id, root);
+			else
+				rtnSet = queryWalk(id, root, type);
+			rtn = new ComponentQuery(rtnSet);
+		}
+		return(rtn);
+	}
+	
+	/** Returns a lazy iterator over elements matching the given class which are children of root. */
+	public static ComponentQueryIterator iterate(String id, Element root) {
+		return(iterate(id, root, QueryType.CLASS, false));
+	}
+	
+	/** 
+	 * Returns a lazy iterator over elements matching the given id or class which are children of root.
+	 * <p>
+	 * Matches are returned in document order, and the DOM is only searched as
+	 * far as is needed to find each match as it is requested; so use this in
+	 * preference to query() when only the first few matches are needed.
+	 * <p>
+	 * If scoped is set, elements below a child element with the 'Component' 
+	 * class are never visited (the nested component's root element itself 
+	 * still is). Scoped iteration always walks the DOM.
+	 */
+	public static ComponentQueryIterator iterate(String id, Element root, QueryType type, boolean scoped) {
+		ComponentQueryIterator rtn = null;
+		ComponentIndex index = ComponentIndex.get();
+		if (root == null)
+			rtn = new ComponentQueryIterator(new ArrayList<Element>());
+		else if (!scoped && (index != null) && index.covers(root)) 
+			rtn = new ComponentQueryIterator(type == QueryType.CLASS ? index.getByClass(id, root) : index.getById(id, root));
+		else if (!scoped && (type == QueryType.CLASS) && canQueryNative(id))
+			rtn = new ComponentQueryIterator(nativeSupport == NATIVE_CLASSNAME ? getElementsByClassName(root, id) : querySelectorAll(root, "." + id));
+		else
+			rtn = new ComponentQueryIterator(id, root, type, scoped);
+		return(rtn);
+	}
+	
+	/** Returns true if the element has the given class. */
+	public static boolean hasClass(Element e, String classname) {
+		return((e != null) && matchesClassTarget(e, classname));
+	}
+	
+	/** 
+	 * Enables or disables the native query path.
+	 * <p>
+	 * Native queries are enabled by default, and used if the browser 
+	 * supports them; this is mainly useful for comparing the two paths.
+	 */
+	public static void setNativeEnabled(boolean enabled) {
+		nativeEnabled = enabled;
+	}
+	
+	/** Returns true if class queries are currently answered natively. */
+	public static boolean isNativeSupported() {
+		if (nativeSupport == -1)
+			nativeSupport = detectNativeSupport();
+		return(nativeEnabled && (nativeSupport != NATIVE_NONE));
+	}
+	
+	/** Checks if a specific class query can be run natively. */
+	private static boolean canQueryNative(String classname) {
+		boolean rtn = false;
+		if ((classname != null) && (classname.length() > 0) && isNativeSupported()) {
+			if (nativeSupport == NATIVE_CLASSNAME) 
+				rtn = classname.indexOf(' ') == -1;
+			else 
+				rtn = classname.matches("-?[_a-zA-Z][_a-zA-Z0-9-]*"); // Must be a safe selector.
+		}
+		return(rtn);
+	}
+	
+	/** Runs a class query using the native browser api. */
+	private static ArrayList<Element> queryNative(String classname, Element root) {
+		NodeList<Element> set;
+		if (nativeSupport == NATIVE_CLASSNAME)
+			set = getElementsByClassName(root, classname);
+		else
+			set = querySelectorAll(root, "." + classname);
+		int count = set.getLength();
+		ArrayList<Element> rtn = new ArrayList<Element>(count);
+		for (int i = 0; i < count; ++i) 
+			rtn.add(set.getItem(i));
+		return(rtn);
+	}
+	
+	/** Runs a query by walking the DOM under root, in document order. */
+	private static ArrayList<Element> queryWalk(String id, Element root, QueryType type) {
+		ArrayList<Element> rtn = new ArrayList<Element>();
+		ComponentWalker walker = new ComponentWalker(root, false);
+		Element e;
+		while ((e = walker.next()) != null) {
+			switch(type) {
+				case ID:
+				  if (matchesIdTarget(e, id))
+						rtn.add(e);
+				  break;
+				case CLASS:
+					if (matchesClassTarget(e, id)) 
+						rtn.add(e);
+					break;
 			}
 		}
 		return(rtn);
 	}
 	
+	/** Checks what native query api, if any, the browser has. */
+	private static native int detectNativeSupport() /*-{
+		if ($doc.getElementsByClassName)
+			return(@twisted.client.impl.ComponentQuery::NATIVE_CLASSNAME);
+		else if ($doc.querySelectorAll)
+			return(@twisted.client.impl.ComponentQuery::NATIVE_SELECTOR);
+		return(@twisted.client.impl.ComponentQuery::NATIVE_NONE);
+	}-*/;
+	
+	/** Native getElementsByClassName() call. */
+	private static native NodeList<Element> getElementsByClassName(Element root, String classname) /*-{
+		return(root.getElementsByClassName(classname));
+	}-*/;
+	
+	/** Native querySelectorAll() call. */
+	private static native NodeList<Element> querySelectorAll(Element root, String selector) /*-{
+		return(root.querySelectorAll(selector));
+	}-*/;
+	
 	/** Looks for a matching classname... */
-	private static boolean matchesClassTarget(Node n, String classname) {
+	static boolean matchesClassTarget(Node n, String classname) {
 		boolean rtn = true;
 		int offset = 0;
 		String rawClassname = Element.as(n).getClassName();
@@ -127,7 +248,7 @@ public class ComponentQuery {
 	}
 	
 	/** Looks for a matching id... */
-	private static boolean matchesIdTarget(Node n, String id) {
+	static boolean matchesIdTarget(Node n, String id) {
 	  String nid = Element.as(n).getId();
 	  boolean rtn = false;
 	  if ((nid != null) && (nid.equals(id))) 
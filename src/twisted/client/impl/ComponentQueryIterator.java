@@ -0,0 +1,131 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.impl;
+
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.NoSuchElementException;
+
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.NodeList;
+
+import twisted.client.impl.ComponentQuery.QueryType;
+
+/**
+ * Lazy form of a ComponentQuery.
+ * <p>
+ * Matches are found one at a time, in document order, as they are asked
+ * for; if the caller stops calling next() the rest of the tree is never
+ * visited. Create instances using ComponentQuery.iterate().
+ * <p>
+ * The DOM should not be modified while iterating.
+ */
+public class ComponentQueryIterator implements Iterator<Element>, Iterable<Element> {
+
+	/** The target id or classname. */
+	private String id = null;
+
+	/** Query type. */
+	private QueryType type = null;
+
+	/** The walk, if walking. */
+	private ComponentWalker walker = null;
+
+	/** Results from the index or a native query, if not walking. */
+	private ArrayList<Element> list = null;
+
+	/** Results from a native query, if not walking. */
+	private NodeList<Element> nativeList = null;
+
+	/** Offset into list or nativeList. */
+	private int offset = 0;
+
+	/** The next match, if already found. */
+	private Element next = null;
+
+	/** Creates an iterator that walks the DOM. */
+	protected ComponentQueryIterator(String id, Element root, QueryType type, boolean scoped) {
+		this.id = id;
+		this.type = type;
+		this.walker = new ComponentWalker(root, scoped);
+	}
+
+	/** Creates an iterator over a precomputed result. */
+	protected ComponentQueryIterator(ArrayList<Element> list) {
+		this.list = list;
+	}
+
+	/** Creates an iterator over a native query result. */
+	protected ComponentQueryIterator(NodeList<Element> nativeList) {
+		this.nativeList = nativeList;
+	}
+
+	@Override
+	public Iterator<Element> iterator() {
+		return(this);
+	}
+
+	@Override
+	public boolean hasNext() {
+		if (next == null)
+			next = findNext();
+		return(next != null);
+	}
+
+	@Override
+	public Element next() {
+		if (!hasNext())
+			throw new NoSuchElementException();
+		Element rtn = next;
+		next = null;
+		return(rtn);
+	}
+
+	/** Returns the next match, or null if there are no more. */
+	public Element nextOrNull() {
+		return(hasNext() ? next() : null);
+	}
+
+	@Override
+	public void remove() {
+		throw new UnsupportedOperationException();
+	}
+
+	/** Finds the next match, from whichever source this iterator has. */
+	private Element findNext() {
+		Element rtn = null;
+		if (list != null) {
+			if (offset < list.size())
+				rtn = list.get(offset++);
+		}
+		else if (nativeList != null) {
+			if (offset < nativeList.getLength())
+				rtn = nativeList.getItem(offset++);
+		}
+		else {
+			Element e;
+			while ((rtn == null) && ((e = walker.next()) != null)) {
+				boolean match = type == QueryType.ID ?
+						ComponentQuery.matchesIdTarget(e, id) :
+						ComponentQuery.matchesClassTarget(e, id);
+				if (match)
+					rtn = e;
+			}
+		}
+		return(rtn);
+	}
+}
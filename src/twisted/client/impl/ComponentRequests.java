@@ -0,0 +1,89 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.impl;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+
+import com.google.gwt.core.client.Duration;
+
+/**
+ * Table of component creation requests that are still waiting on the factory.
+ * <p>
+ * Request ids are short sequential handles, so adding and completing a
+ * request are both constant time. The time each request was made is kept
+ * so slow factories can be reported.
+ */
+public class ComponentRequests {
+
+	/** A single pending request. */
+	private static class Request {
+
+		/** The request id. */
+		private String id;
+
+		/** The component type requested. */
+		private String type;
+
+		/** When the request was made. */
+		private double created;
+	}
+
+	/** The next request number. */
+	private int next = 0;
+
+	/** Pending requests, by id. */
+	private HashMap<String, Request> pending = new HashMap<String, Request>();
+
+	/** Adds a request for a component of the given type, returning its id. */
+	public String add(String type) {
+		Request r = new Request();
+		r.id = "r" + (next++);
+		r.type = type;
+		r.created = Duration.currentTimeMillis();
+		pending.put(r.id, r);
+		return(r.id);
+	}
+
+	/**
+	 * Marks a request as done.
+	 * <p>
+	 * Returns how long the request took in milliseconds, or -1 if it
+	 * was not pending.
+	 */
+	public double complete(String id) {
+		double rtn = -1;
+		Request r = pending.remove(id);
+		if (r != null)
+			rtn = Duration.currentTimeMillis() - r.created;
+		return(rtn);
+	}
+
+	/** Returns the number of pending requests. */
+	public int size() {
+		return(pending.size());
+	}
+
+	/** Returns a human readable description of each pending request, with its age. */
+	public ArrayList<String> describe() {
+		ArrayList<String> rtn = new ArrayList<String>();
+		double now = Duration.currentTimeMillis();
+		for (Request r : pending.values())
+			rtn.add(r.id + "@" + r.type + " (" + (long) (now - r.created) + "ms)");
+		return(rtn);
+	}
+}
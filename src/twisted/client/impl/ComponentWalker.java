@@ -0,0 +1,138 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.impl;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+
+/**
+ * Visits the elements under a root element in document order.
+ * <p>
+ * Uses the native TreeWalker where the browser has one, otherwise
+ * follows the first-child / next-sibling pointers directly. Either way
+ * no intermediate lists are created, and each walker keeps its own
+ * state so walks can be nested freely.
+ * <p>
+ * The root element itself is not visited.
+ */
+public class ComponentWalker {
+
+	/** Native TreeWalker support; -1 until first checked. */
+	private static int treeWalkerSupport = -1;
+
+	/** If the native TreeWalker may be used at all. */
+	private static boolean treeWalkerEnabled = true;
+
+	/** The root of the walk. */
+	private Element root = null;
+
+	/** If nested components are skipped. */
+	private boolean scoped = false;
+
+	/** The last element returned; null before the first call. */
+	private Element current = null;
+
+	/** The native TreeWalker, if used. */
+	private JavaScriptObject walker = null;
+
+	/** If the walk has finished. */
+	private boolean done = false;
+
+	/**
+	 * Creates a walker for the elements under root.
+	 * <p>
+	 * If scoped is set, child elements with the 'Component' class are
+	 * returned but not descended into.
+	 */
+	public ComponentWalker(Element root, boolean scoped) {
+		this.root = root;
+		this.scoped = scoped;
+		if (isTreeWalkerSupported())
+			walker = createTreeWalker(root);
+	}
+
+	/**
+	 * Enables or disables use of the native TreeWalker.
+	 * <p>
+	 * It is enabled by default, and used if the browser supports it; this is
+	 * mainly useful for comparing the two paths.
+	 */
+	public static void setTreeWalkerEnabled(boolean enabled) {
+		treeWalkerEnabled = enabled;
+	}
+
+	/** Returns true if new walkers use the native TreeWalker. */
+	public static boolean isTreeWalkerSupported() {
+		if (treeWalkerSupport == -1)
+			treeWalkerSupport = detectTreeWalker() ? 1 : 0;
+		return(treeWalkerEnabled && (treeWalkerSupport == 1));
+	}
+
+	/** Returns the next element, or null when there are no more. */
+	public Element next() {
+		if (!done) {
+			boolean skip = scoped && (current != null) && ComponentQuery.matchesClassTarget(current, ComponentQuery.COMPONENT);
+			if (walker != null)
+				current = nextNative(walker, skip);
+			else
+				current = nextPointer(current == null ? root : current, skip);
+			if (current == null)
+				done = true;
+		}
+		return(current);
+	}
+
+	/** Finds the element after n by following node pointers. */
+	private Element nextPointer(Node n, boolean skip) {
+		Node rtn = null;
+		do {
+			rtn = null;
+			if ((n == root) || !skip)
+				rtn = n.getFirstChild();
+			while ((rtn == null) && (n != root)) {
+				rtn = n.getNextSibling();
+				if (rtn == null)
+					n = n.getParentNode();
+			}
+			n = rtn;
+			skip = false; // Only ever applies to the starting element.
+		} while ((rtn != null) && (rtn.getNodeType() != Node.ELEMENT_NODE));
+		return(rtn == null ? null : Element.as(rtn));
+	}
+
+	private static native boolean detectTreeWalker() /*-{
+		return(!!$doc.createTreeWalker);
+	}-*/;
+
+	private static native JavaScriptObject createTreeWalker(Element root) /*-{
+		return($doc.createTreeWalker(root, 1, null, false)); // 1: NodeFilter.SHOW_ELEMENT
+	}-*/;
+
+	/** Moves the TreeWalker on, optionally skipping the children of the current node. */
+	private static native Element nextNative(JavaScriptObject walker, boolean skip) /*-{
+		if (!skip)
+			return(walker.nextNode());
+		for (;;) {
+			var n = walker.nextSibling();
+			if (n)
+				return(n);
+			if (!walker.parentNode())
+				return(null);
+		}
+	}-*/;
+}
@@ -0,0 +1,141 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.impl;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.Node;
+
+/**
+ * Thin wrapper around the browser MutationObserver.
+ * <p>
+ * Records are normally delivered async by the browser; call flush()
+ * to process any records that are still waiting before reading state
+ * that depends on them.
+ * <p>
+ * Check isSupported() before creating one; on browsers without
+ * MutationObserver observe() does nothing.
+ */
+public class DomObserver {
+
+	/** Receives the individual changes from mutation records. */
+	public interface Listener {
+
+		/** A node was inserted somewhere under the observed root. */
+		void onNodeAdded(Node node);
+
+		/** A node was removed from somewhere under the observed root. */
+		void onNodeRemoved(Node node);
+
+		/** The class or id attribute of an element changed. */
+		void onAttributeChanged(Element target, String name);
+	}
+
+	/** The native observer. */
+	private JavaScriptObject observer = null;
+
+	/** Where changes go. */
+	private Listener listener = null;
+
+	public DomObserver(Listener listener) {
+		this.listener = listener;
+	}
+
+	/** Returns true if the browser supports MutationObserver. */
+	public static native boolean isSupported() /*-{
+		return(!!($wnd.MutationObserver || $wnd.WebKitMutationObserver));
+	}-*/;
+
+	/**
+	 * Starts watching a subtree for insertions and removals.
+	 * <p>
+	 * If attributes is set, changes to class and id attributes are
+	 * reported as well.
+	 */
+	public void observe(Element root, boolean attributes) {
+		if ((observer == null) && isSupported())
+			observer = createObserver(this);
+		if (observer != null)
+			observe(observer, root, attributes);
+	}
+
+	/** Stops watching, dropping any records not yet processed. */
+	public void disconnect() {
+		if (observer != null)
+			disconnect(observer);
+	}
+
+	/** Processes any records the browser has not delivered yet. */
+	public void flush() {
+		if (observer != null)
+			flush(this, observer);
+	}
+
+	private void nodeAdded(Node node) {
+		listener.onNodeAdded(node);
+	}
+
+	private void nodeRemoved(Node node) {
+		listener.onNodeRemoved(node);
+	}
+
+	private void attributeChanged(Element target, String name) {
+		listener.onAttributeChanged(target, name);
+	}
+
+	private static native JavaScriptObject createObserver(DomObserver self) /*-{
+		var type = $wnd.MutationObserver || $wnd.WebKitMutationObserver;
+		return(new type($entry(function(records) {
+			self.@twisted.client.impl.DomObserver::process(Lcom/google/gwt/core/client/JavaScriptObject;)(records);
+		})));
+	}-*/;
+
+	private static native void observe(JavaScriptObject observer, Element root, boolean attributes) /*-{
+		var options = { childList: true, subtree: true };
+		if (attributes) {
+			options.attributes = true;
+			options.attributeFilter = [ 'class', 'id' ];
+		}
+		observer.observe(root, options);
+	}-*/;
+
+	private static native void disconnect(JavaScriptObject observer) /*-{
+		observer.disconnect();
+	}-*/;
+
+	private static native void flush(DomObserver self, JavaScriptObject observer) /*-{
+		var records = observer.takeRecords();
+		if (records.length > 0)
+			self.@twisted.client.impl.DomObserver::process(Lcom/google/gwt/core/client/JavaScriptObject;)(records);
+	}-*/;
+
+	/** Dispatches a batch of records, in the order they happened. */
+	private native void process(JavaScriptObject records) /*-{
+		for (var i = 0; i < records.length; ++i) {
+			var r = records[i];
+			if (r.type == 'childList') {
+				for (var j = 0; j < r.removedNodes.length; ++j)
+					this.@twisted.client.impl.DomObserver::nodeRemoved(Lcom/google/gwt/dom/client/Node;)(r.removedNodes[j]);
+				for (var j = 0; j < r.addedNodes.length; ++j)
+					this.@twisted.client.impl.DomObserver::nodeAdded(Lcom/google/gwt/dom/client/Node;)(r.addedNodes[j]);
+			}
+			else if (r.type == 'attributes') {
+				this.@twisted.client.impl.DomObserver::attributeChanged(Lcom/google/gwt/dom/client/Element;Ljava/lang/String;)(r.target, r.attributeName);
+			}
+		}
+	}-*/;
+}
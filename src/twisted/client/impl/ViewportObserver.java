@@ -0,0 +1,107 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.impl;
+
+import java.util.ArrayList;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.dom.client.Element;
+
+/**
+ * Thin wrapper around the browser IntersectionObserver.
+ * <p>
+ * Reports observed elements as they come within a margin of the
+ * viewport. Check isSupported() before creating one; on browsers
+ * without IntersectionObserver observe() does nothing.
+ */
+public class ViewportObserver {
+
+	/** Receives elements as they come near the viewport. */
+	public interface Listener {
+
+		/** The given elements are now within the margin of the viewport. */
+		void onVisible(ArrayList<Element> elements);
+	}
+
+	/** The native observer. */
+	private JavaScriptObject observer = null;
+
+	/** Where changes go. */
+	private Listener listener = null;
+
+	/** Creates an observer that reports elements within margin pixels of the viewport. */
+	public ViewportObserver(Listener listener, int margin) {
+		this.listener = listener;
+		if (isSupported())
+			observer = createObserver(this, margin + "px");
+	}
+
+	/** Returns true if the browser supports IntersectionObserver. */
+	public static native boolean isSupported() /*-{
+		return(!!$wnd.IntersectionObserver);
+	}-*/;
+
+	/** Starts watching an element. */
+	public void observe(Element e) {
+		if (observer != null)
+			observe(observer, e);
+	}
+
+	/** Stops watching an element. */
+	public void unobserve(Element e) {
+		if (observer != null)
+			unobserve(observer, e);
+	}
+
+	/** Stops watching everything. */
+	public void disconnect() {
+		if (observer != null)
+			disconnect(observer);
+	}
+
+	private void visible(JsArray<Element> targets) {
+		ArrayList<Element> set = new ArrayList<Element>(targets.length());
+		for (int i = 0; i < targets.length(); ++i)
+			set.add(targets.get(i));
+		listener.onVisible(set);
+	}
+
+	private static native JavaScriptObject createObserver(ViewportObserver self, String margin) /*-{
+		return(new $wnd.IntersectionObserver($entry(function(entries) {
+			var targets = [];
+			for (var i = 0; i < entries.length; ++i) {
+				if (entries[i].isIntersecting)
+					targets.push(entries[i].target);
+			}
+			if (targets.length > 0)
+				self.@twisted.client.impl.ViewportObserver::visible(Lcom/google/gwt/core/client/JsArray;)(targets);
+		}), { rootMargin: margin }));
+	}-*/;
+
+	private static native void observe(JavaScriptObject observer, Element e) /*-{
+		observer.observe(e);
+	}-*/;
+
+	private static native void unobserve(JavaScriptObject observer, Element e) /*-{
+		observer.unobserve(e);
+	}-*/;
+
+	private static native void disconnect(JavaScriptObject observer) /*-{
+		observer.disconnect();
+	}-*/;
+}
@@ -0,0 +1,202 @@
+/**
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package twisted.client.utils;
+
+import java.util.LinkedList;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.Scheduler;
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
+import twisted.client.ComponentLog;
+
+/**
+ * Shared queue for running commands async.
+ * <p>
+ * Rather than a Timer per call (which browsers clamp to 4ms or more,
+ * and which each cost a separate event loop turn) commands are queued
+ * and the whole queue is drained in one go; as a microtask where the
+ * browser supports Promises, otherwise via Scheduler.scheduleDeferred().
+ * <p>
+ * Draining stops once the frame budget is used up, and the rest of the
+ * queue continues in a later event loop turn so the browser gets a
+ * chance to render.
+ */
+public class AsyncScheduler {
+
+  /** Commands waiting to run. */
+  private static LinkedList<ScheduledCommand> queue = new LinkedList<ScheduledCommand>();
+
+  /** If a drain is already scheduled. */
+  private static boolean scheduled = false;
+
+  /** Milliseconds to run commands for before yielding to the browser. */
+  private static int budget = 8;
+
+  /** Commands waiting for the browser to be idle. */
+  private static LinkedList<ScheduledCommand> idle = new LinkedList<ScheduledCommand>();
+
+  /** If an idle drain is already scheduled. */
+  private static boolean idleScheduled = false;
+
+  /** Drains the queue. */
+  private static final ScheduledCommand DRAIN = new ScheduledCommand() {
+    public void execute() {
+      drain();
+    }
+  };
+
+  /** Queues a command to run async. */
+  public static void schedule(ScheduledCommand command) {
+    if (command != null) {
+      queue.add(command);
+      if (!scheduled) {
+        scheduled = true;
+        if (!scheduleMicrotask(DRAIN))
+          Scheduler.get().scheduleDeferred(DRAIN);
+      }
+    }
+  }
+
+  /**
+   * Runs a command before the next frame is rendered.
+   * <p>
+   * Uses requestAnimationFrame where the browser has it, otherwise the
+   * command is simply deferred.
+   */
+  public static void scheduleFrame(ScheduledCommand command) {
+    if ((command != null) && !scheduleAnimationFrame(command))
+      Scheduler.get().scheduleDeferred(command);
+  }
+
+  /**
+   * Runs a command when the browser is idle.
+   * <p>
+   * Idle commands run in requestIdleCallback slots, for as long as the
+   * browser says the slot has left; where requestIdleCallback is missing
+   * they run from a timeout, for the frame budget at most. Either way at
+   * least one command runs each slot, so the queue always progresses.
+   */
+  public static void scheduleIdle(ScheduledCommand command) {
+    if (command != null) {
+      idle.add(command);
+      if (!idleScheduled) {
+        idleScheduled = true;
+        requestIdle(budget);
+      }
+    }
+  }
+
+  /**
+   * Sets the time budget for each drain, in milliseconds.
+   * <p>
+   * Commands that are still queued when it runs out continue after the
+   * browser has had a chance to render; the default is 8ms, about half
+   * a frame at 60fps.
+   */
+  public static void setFrameBudget(int milliseconds) {
+    budget = milliseconds;
+  }
+
+  /** Runs queued commands until the queue is empty or the budget is used. */
+  private static void drain() {
+    Throwable error = null;
+    Duration elapsed = new Duration();
+    boolean pause = false;
+    while ((error == null) && (queue.size() > 0) && !pause) {
+      ScheduledCommand c = queue.removeFirst();
+      try {
+        c.execute();
+      }
+      catch(Throwable e) {
+        error = e;
+      }
+      pause = elapsed.elapsedMillis() >= budget;
+    }
+
+    // Anything left waits for the next turn; not a microtask, or we'd never yield.
+    if (queue.size() > 0)
+      Scheduler.get().scheduleDeferred(DRAIN);
+    else
+      scheduled = false;
+
+    if (error != null)
+      ComponentLog.exception(error);
+  }
+
+  /** Runs idle commands until the queue is empty or the slot is used. */
+  private static void drainIdle(double remaining) {
+    Throwable error = null;
+    Duration elapsed = new Duration();
+    boolean pause = false;
+    while ((error == null) && (idle.size() > 0) && !pause) {
+      ScheduledCommand c = idle.removeFirst();
+      try {
+        c.execute();
+      }
+      catch(Throwable e) {
+        error = e;
+      }
+      pause = elapsed.elapsedMillis() >= remaining;
+    }
+
+    if (idle.size() > 0)
+      requestIdle(budget);
+    else
+      idleScheduled = false;
+
+    if (error != null)
+      ComponentLog.exception(error);
+  }
+
+  /** Requests an idle slot; fallback is a timeout with the given budget. */
+  private static native void requestIdle(int fallback) /*-{
+    var drain = $entry(function(remaining) {
+      @twisted.client.utils.AsyncScheduler::drainIdle(D)(remaining);
+    });
+    if ($wnd.requestIdleCallback) {
+      $wnd.requestIdleCallback(function(deadline) {
+        drain(deadline.timeRemaining());
+      });
+    }
+    else {
+      $wnd.setTimeout(function() {
+        drain(fallback);
+      }, 1);
+    }
+  }-*/;
+
+  /** Schedules a command for the next frame, if the browser supports requestAnimationFrame. */
+  private static native boolean scheduleAnimationFrame(ScheduledCommand command) /*-{
+    if (!$wnd.requestAnimationFrame)
+      return(false);
+    $wnd.requestAnimationFrame($entry(function() {
+      command.@com.google.gwt.core.client.Scheduler.ScheduledCommand::execute()();
+    }));
+    return(true);
+  }-*/;
+
+  /** Schedules a command as a microtask, if the browser supports Promises. */
+  private static native boolean scheduleMicrotask(ScheduledCommand command) /*-{
+    if (!$wnd.Promise)
+      return(false);
+    $wnd.Promise.resolve().then($entry(function() {
+      command.@com.google.gwt.core.client.Scheduler.ScheduledCommand::execute()();
+    }));
+    return(true);
+  }-*/;
+}
@@ -16,12 +16,15 @@
 
 package twisted.client.utils;
 
+import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.Map;
 
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.dom.client.InputElement;
+import com.google.gwt.dom.client.NodeList;
 import com.google.gwt.dom.client.SelectElement;
 import com.google.gwt.dom.client.TextAreaElement;
 import com.google.gwt.dom.client.Style.Display;
@@ -31,7 +34,6 @@ import com.google.gwt.event.dom.client.KeyCodes;
 import com.google.gwt.event.dom.client.KeyDownEvent;
 import com.google.gwt.event.dom.client.KeyDownHandler;
 import com.google.gwt.event.shared.EventHandler;
-import com.google.gwt.user.client.Timer;
 import com.google.gwt.user.client.ui.Widget;
 
 import twisted.client.events.ComponentChangeListener;
@@ -51,6 +53,9 @@ public class CommonEvents {
   /** Callback cache. */
   private static HashMap<String, GenericCallback<?>> callbacks = new HashMap<String, GenericCallback<?>>();
 
+  /** Targets found by cssFill(), by template and then by key. */
+  private static ElementMap<HashMap<String, ArrayList<Element>>> fillTargets = new ElementMap<HashMap<String, ArrayList<Element>>>();
+
   /** Prevents default form behavior for text inputs that submits form. */
   public static void preventFormSubmit(Element target) {
     ComponentKeyListener l = ComponentKeyListener.get(target);
@@ -248,37 +253,29 @@ public class CommonEvents {
   }
 
   /**
-   * Invokes a GenericCallback async without code splitting.
-   * <p>
-   * Really all we do is a 1ms delay on a timeout; but it queues things up and
-   * lets them run when the browser is ready without locking.
+   * Invokes a GenericCallback async on the AsyncScheduler, without code splitting.
    */
   public static void run(final GenericCallback<Void> callback) {
     if (callback != null) {
-      Timer t = new Timer() {
-        public void run() {
+      AsyncScheduler.schedule(new ScheduledCommand() {
+        public void execute() {
           callback.onSuccess(null);
         }
-      };
-      t.schedule(1);
+      });
     }
   }
 
   /**
-   * Invokes a GenericCallback async without code splitting to throw an error.
-   * <p>
-   * Really all we do is a 1ms delay on a timeout; but it queues things up and
-   * lets them run when the browser is ready without locking.
+   * Invokes a GenericCallback async on the AsyncScheduler, without code splitting, to throw an error.
    */
   public static void run(final GenericCallback<Void> callback,
       final Throwable caught) {
     if (callback != null) {
-      Timer t = new Timer() {
-        public void run() {
+      AsyncScheduler.schedule(new ScheduledCommand() {
+        public void execute() {
           callback.onFailure(caught);
         }
-      };
-      t.schedule(1);
+      });
     }
   }
 
@@ -319,6 +316,9 @@ public class CommonEvents {
    * Note also that the innerHTML of the target is replaced, so
    * the use of inner spans may be appropriate for injecting text
    * in some cases.
+   * <p>
+   * For templates that are filled more than once, or with large
+   * elements, cssFill() is quicker.
    */
   public static void cssTemplate(Element template, Map<String,Element> properties) {
     for (String key : properties.keySet()) {
@@ -342,4 +342,80 @@ public class CommonEvents {
       }
     }
   }
+
+  /**
+   * Populates an element with copies of other elements via style tags.
+   * <p>
+   * The same as cssTemplate(), except:
+   * <ul>
+   * 		<li> Targets for every key are found in a single walk of the template.
+   * 		<li> Targets are filled with a deep copy of the element in properties,
+   * 		rather than by serializing it and setting innerHTML. The element itself
+   * 		is left where it is; a null element empties the targets.
+   * 		<li> The targets found are remembered for the template, so filling
+   * 		the same template again (eg. with new data) doesn't search it again.
+   * 		If a key's targets are no longer in the template (eg. its content has
+   * 		been replaced) the key is searched for again; but targets added to a
+   * 		template alongside ones that are still there are not noticed.
+   * </ul>
+   */
+  public static void cssFill(Element template, Map<String,Element> properties) {
+    HashMap<String, ArrayList<Element>> targets = fillTargets.get(template);
+    if (targets == null) {
+      targets = new HashMap<String, ArrayList<Element>>();
+      fillTargets.put(template, targets);
+    }
+
+    // Find any keys we haven't seen for this template, or whose targets
+    // have gone, in one walk.
+    HashMap<String, ArrayList<Element>> found = new HashMap<String, ArrayList<Element>>();
+    for (String key : properties.keySet()) {
+      if (!hasTargets(template, targets.get(key))) {
+        targets.remove(key);
+        found.put(key, new ArrayList<Element>());
+      }
+    }
+    if (found.size() > 0) {
+      NodeList<Element> all = template.getElementsByTagName("*");
+      for (int i = 0; i < all.getLength(); ++i) {
+        Element e = all.getItem(i);
+        String classname = e.getClassName();
+        if ((classname != null) && (classname.length() > 0)) {
+          for (String token : classname.split(" ")) {
+            ArrayList<Element> set = found.get(token);
+            if ((set != null) && ((set.size() == 0) || (set.get(set.size() - 1) != e)))
+              set.add(e);
+          }
+        }
+      }
+      for (String key : found.keySet()) {
+        ArrayList<Element> set = found.get(key);
+        for (Element target : set)
+          target.removeClassName(key);
+        if (set.size() > 0)
+          targets.put(key, set); // Keys with no targets are looked for every time.
+      }
+    }
+
+    for (String key : properties.keySet()) {
+      Element c = properties.get(key);
+      ArrayList<Element> set = targets.get(key);
+      if (set != null) {
+        for (Element target : set) {
+          while (target.getFirstChild() != null)
+            target.removeChild(target.getFirstChild());
+          if (c != null)
+            target.appendChild(c.cloneNode(true));
+        }
+      }
+    }
+  }
+
+  /** Returns true if there are targets, and they are all still in the template. */
+  private static boolean hasTargets(Element template, ArrayList<Element> targets) {
+    boolean rtn = (targets != null) && (targets.size() > 0);
+    for (int i = 0; rtn && (i < targets.size()); ++i)
+      rtn = (targets.get(i) != template) && template.isOrHasChild(targets.get(i));
+    return(rtn);
+  }
 }
@@ -0,0 +1,247 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client.utils;
+
+import java.util.LinkedList;
+import java.util.Map;
+
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.dom.client.Element;
+
+import twisted.client.ComponentContainer;
+import twisted.client.ComponentLog;
+
+/**
+ * Batches DOM reads and writes, once per animation frame.
+ * <p>
+ * Reading layout after writing to the DOM forces the browser to lay the
+ * page out there and then; components that run in the same tick and each
+ * read then write can cause a layout each. Commands queued here run in
+ * two phases before the next frame: every queued read, then every queued
+ * write. Reads all see the DOM as it was before any of the writes.
+ * <p>
+ * Reads queued by a write run in the next frame; writes queued by a read
+ * run in the same frame. The helpers are opt-in, batched versions of the
+ * CommonEvents and ComponentContainer calls of the same names.
+ */
+public class DomBatch {
+
+  /** Queued reads. */
+  private static LinkedList<ScheduledCommand> reads = new LinkedList<ScheduledCommand>();
+
+  /** Queued writes. */
+  private static LinkedList<ScheduledCommand> writes = new LinkedList<ScheduledCommand>();
+
+  /** If a frame callback is pending; it stays pending after a direct flush(). */
+  private static boolean scheduled = false;
+
+  /** If a flush is running; commands queued meanwhile don't schedule another. */
+  private static boolean flushing = false;
+
+  /** If a write has been queued since the last read was. */
+  private static boolean dirty = false;
+
+  /** Number of flushes that ran any commands. */
+  private static int flushes = 0;
+
+  /** Number of forced layouts avoided; see getLayoutsAvoided(). */
+  private static int layoutsAvoided = 0;
+
+  /** Runs the queues. */
+  private static final ScheduledCommand FLUSH = new ScheduledCommand() {
+    public void execute() {
+      scheduled = false;
+      flush();
+    }
+  };
+
+  /** Queues a DOM read. */
+  public static void read(ScheduledCommand command) {
+    if (command != null) {
+      if (dirty) {
+        ++layoutsAvoided;
+        dirty = false;
+      }
+      reads.add(command);
+      schedule();
+    }
+  }
+
+  /** Queues a DOM write. */
+  public static void write(ScheduledCommand command) {
+    if (command != null) {
+      dirty = true;
+      writes.add(command);
+      schedule();
+    }
+  }
+
+  /**
+   * Runs every queued read, then every queued write, now.
+   * <p>
+   * This is called each frame; call it directly if the DOM must be up to
+   * date immediately, eg. before measuring it outside of a read. Does 
+   * nothing if the queues are empty, or when called from a queued command;
+   * the running flush runs anything that command queues in its phase.
+   */
+  public static void flush() {
+    if (!flushing && ((reads.size() > 0) || (writes.size() > 0))) {
+      Throwable error = null;
+      flushing = true;
+      ++flushes;
+
+      while (reads.size() > 0) {
+        try {
+          reads.removeFirst().execute();
+        }
+        catch(Throwable e) {
+          error = e;
+        }
+      }
+
+      while (writes.size() > 0) {
+        try {
+          writes.removeFirst().execute();
+        }
+        catch(Throwable e) {
+          error = e;
+        }
+      }
+      flushing = false;
+      dirty = false;
+
+      // Reads queued by writes wait for the next frame.
+      if (reads.size() > 0)
+        schedule();
+
+      if (error != null)
+        ComponentLog.exception(error);
+    }
+  }
+
+  /**
+   * Returns the number of forced layouts avoided so far.
+   * <p>
+   * Counted as the number of times a read was queued after a write, with
+   * no read in between; each would have made the browser lay out the page 
+   * if the calls had been made immediately. It is an estimate; writes that
+   * don't affect layout are counted too.
+   */
+  public static int getLayoutsAvoided() {
+    return(layoutsAvoided);
+  }
+
+  /** Returns the number of times the queues have been flushed; empty flushes aren't counted. */
+  public static int getFlushCount() {
+    return(flushes);
+  }
+
+  /** Resets the counters, and forgets any write queued since the last read. */
+  public static void resetStats() {
+    layoutsAvoided = 0;
+    flushes = 0;
+    dirty = false;
+  }
+
+  /** Batched ComponentContainer.setValue(). */
+  public static void setValue(final ComponentContainer container, final String id, final String value) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        container.setValue(id, value);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.show(). */
+  public static void show(final Element target) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.show(target);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.hide(). */
+  public static void hide(final Element target) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.hide(target);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.enable(). */
+  public static void enable(final Element target) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.enable(target);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.disable(). */
+  public static void disable(final Element target) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.disable(target);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.value(Element); the value is passed to callback in the read phase. */
+  public static void value(final Element target, final GenericCallback<String> callback) {
+    read(new ScheduledCommand() {
+      public void execute() {
+        callback.onSuccess(CommonEvents.value(target));
+      }
+    });
+  }
+
+  /** Batched CommonEvents.value(Element, String). */
+  public static void value(final Element target, final String value) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.value(target, value);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.cssTemplate(). */
+  public static void cssTemplate(final Element template, final Map<String,Element> properties) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.cssTemplate(template, properties);
+      }
+    });
+  }
+
+  /** Batched CommonEvents.cssFill(). */
+  public static void cssFill(final Element template, final Map<String,Element> properties) {
+    write(new ScheduledCommand() {
+      public void execute() {
+        CommonEvents.cssFill(template, properties);
+      }
+    });
+  }
+
+  /** Schedules a flush for the next frame, unless one is already scheduled or running. */
+  private static void schedule() {
+    if (!scheduled && !flushing) {
+      scheduled = true;
+      AsyncScheduler.scheduleFrame(FLUSH);
+    }
+  }
+}
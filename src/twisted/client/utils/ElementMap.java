@@ -0,0 +1,142 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client.utils;
+
+import java.util.HashMap;
+
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Element;
+
+/**
+ * Map from elements to values.
+ * <p>
+ * Where the browser has WeakMap the elements are the keys of a native
+ * WeakMap; lookups don't add a hash code expando to each element, and
+ * entries for elements that are no longer referenced anywhere else
+ * are collected along with the element. Otherwise a HashMap is used.
+ * <p>
+ * Keys can't be iterated, because WeakMap keys can't be; walk the DOM
+ * instead. Null keys and values are not stored. size() counts entries 
+ * put and not removed, so on the WeakMap path it does not drop when an 
+ * entry is collected.
+ * <p>
+ * Only the map's own entries are weak. Anything else that holds an element
+ * still keeps it alive; in particular ComponentRegister holds every 
+ * component it creates (and so its root element) until the component is 
+ * removed, and ComponentIndex holds indexed elements until it sees them 
+ * removed.
+ */
+public class ElementMap<V> {
+
+  /** Native WeakMap support; -1 until first checked. */
+  private static int weakMapSupport = -1;
+
+  /** The native map, if used. */
+  private JavaScriptObject map = null;
+
+  /** The fallback map, if used. */
+  private HashMap<Element, V> fallback = null;
+
+  /** Number of entries put and not removed. */
+  private int size = 0;
+
+  public ElementMap() {
+    if (isWeakMapSupported())
+      map = createWeakMap();
+    else
+      fallback = new HashMap<Element, V>();
+  }
+
+  /** Returns true if the browser has WeakMap. */
+  public static boolean isWeakMapSupported() {
+    if (weakMapSupport == -1)
+      weakMapSupport = detectWeakMap() ? 1 : 0;
+    return(weakMapSupport == 1);
+  }
+
+  /** Returns the value for an element, or null. */
+  @SuppressWarnings("unchecked")
+  public V get(Element e) {
+    V rtn = null;
+    if (e != null) {
+      if (map != null)
+        rtn = (V) get(map, e);
+      else
+        rtn = fallback.get(e);
+    }
+    return(rtn);
+  }
+
+  /** Returns true if there is a value for the element. */
+  public boolean containsKey(Element e) {
+    return(get(e) != null);
+  }
+
+  /** Sets the value for an element, returning the old value, if any. */
+  public V put(Element e, V value) {
+    V rtn = null;
+    if ((e != null) && (value != null)) {
+      if (map != null) {
+        rtn = get(e);
+        put(map, e, value);
+      }
+      else
+        rtn = fallback.put(e, value);
+      if (rtn == null)
+        ++size;
+    }
+    return(rtn);
+  }
+
+  /** Removes the value for an element, returning it, if any. */
+  public V remove(Element e) {
+    V rtn = get(e);
+    if (rtn != null) {
+      if (map != null)
+        remove(map, e);
+      else
+        fallback.remove(e);
+      --size;
+    }
+    return(rtn);
+  }
+
+  /** Returns the number of entries put and not removed. */
+  public int size() {
+    return(size);
+  }
+
+  private static native boolean detectWeakMap() /*-{
+    return(!!$wnd.WeakMap);
+  }-*/;
+
+  private static native JavaScriptObject createWeakMap() /*-{
+    return(new $wnd.WeakMap());
+  }-*/;
+
+  private static native Object get(JavaScriptObject map, Element e) /*-{
+    var rtn = map.get(e);
+    return(rtn === undefined ? null : rtn);
+  }-*/;
+
+  private static native void put(JavaScriptObject map, Element e, Object value) /*-{
+    map.set(e, value);
+  }-*/;
+
+  private static native void remove(JavaScriptObject map, Element e) /*-{
+    map["delete"](e);
+  }-*/;
+}
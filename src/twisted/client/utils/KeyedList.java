@@ -0,0 +1,229 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.client.utils;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.List;
+
+import com.google.gwt.dom.client.Element;
+
+import twisted.client.ComponentLog;
+import twisted.client.ComponentRegister;
+
+/**
+ * Keeps the rows of a repeated block in step with a keyed list of values.
+ * <p>
+ * Rather than clearing the block and parsing every row again, update()
+ * works out which rows are new, which have gone and which have moved:
+ * <ul>
+ * 		<li> Rows for new keys are created by the renderer, inserted, and parsed.
+ * 		<li> Rows for keys that have gone are removed, and their components disposed.
+ * 		<li> Rows for keys that remain keep their element and components; the 
+ * 			renderer is asked to update them, and the fewest possible are moved.
+ * </ul>
+ * The parent should contain nothing but the rows of the list. Rows that
+ * are already in it (eg. rendered on the server, and parsed with the page)
+ * should be given their keys with adopt() before the first update().
+ */
+public class KeyedList<T> {
+
+  /** Creates and updates row elements. */
+  public interface RowRenderer<T> {
+
+    /** Returns a new row element for the value; it should not be inserted anywhere. */
+    Element create(String key, T value);
+
+    /** Updates an existing row for the current value; components on it are kept. */
+    void update(String key, T value, Element row);
+  }
+
+  /** The element rows are children of. */
+  private Element parent;
+
+  /** The register components are parsed with. */
+  private ComponentRegister register;
+
+  /** The renderer. */
+  private RowRenderer<T> renderer;
+
+  /** The keys of the current rows, in order. */
+  private ArrayList<String> keys = new ArrayList<String>();
+
+  /** The current rows, by key. */
+  private HashMap<String, Element> rows = new HashMap<String, Element>();
+
+  /** Number of rows inserted, moved and removed by the last update. */
+  private int inserted, moved, removed;
+
+  public KeyedList(Element parent, ComponentRegister register, RowRenderer<T> renderer) {
+    this.parent = parent;
+    this.register = register;
+    this.renderer = renderer;
+  }
+
+  /**
+   * Takes the rows already in the parent as the current rows.
+   * <p>
+   * keys.get(i) is the key of the i-th child element. The rows are kept as
+   * they are; their components should already have been parsed.
+   */
+  public void adopt(List<String> keys) {
+    ArrayList<String> adopted = new ArrayList<String>();
+    HashMap<String, Element> children = new HashMap<String, Element>();
+    Element row = parent.getFirstChildElement();
+    for (String key : keys) {
+      if (row == null)
+        throw new IllegalArgumentException("More keys than rows: " + keys.size());
+      if (children.put(key, row) != null)
+        throw new IllegalArgumentException("Duplicate list key: " + key);
+      adopted.add(key);
+      row = row.getNextSiblingElement();
+    }
+    if (row != null)
+      throw new IllegalArgumentException("Fewer keys than rows: " + keys.size());
+    this.keys = adopted;
+    rows = children;
+  }
+
+  /**
+   * Updates the rows to match the given keys and values.
+   * <p>
+   * values.get(i) is the value for keys.get(i), so the lists must be the
+   * same size; duplicate keys after the first are ignored.
+   */
+  public void update(List<String> keys, List<T> values) {
+    if (keys.size() != values.size())
+      throw new IllegalArgumentException("Got " + keys.size() + " keys for " + values.size() + " values");
+    inserted = moved = removed = 0;
+
+    // Drop duplicates, then rows that have gone.
+    ArrayList<String> next = new ArrayList<String>();
+    ArrayList<T> nextValues = new ArrayList<T>();
+    HashSet<String> seen = new HashSet<String>();
+    for (int i = 0; i < keys.size(); ++i) {
+      if (seen.add(keys.get(i))) {
+        next.add(keys.get(i));
+        nextValues.add(values.get(i));
+      }
+      else
+        ComponentLog.trace("Duplicate list key ignored: " + keys.get(i));
+    }
+    HashMap<String, Integer> oldIndex = new HashMap<String, Integer>();
+    for (String key : this.keys) {
+      if (seen.contains(key))
+        oldIndex.put(key, oldIndex.size());
+      else {
+        Element row = rows.remove(key);
+        register.removeComponents(row);
+        row.removeFromParent();
+        ++removed;
+      }
+    }
+
+    // Rows in the longest run that is already in order stay where they are.
+    int[] order = new int[next.size()];
+    for (int i = 0; i < order.length; ++i) {
+      Integer index = oldIndex.get(next.get(i));
+      order[i] = (index == null) ? -1 : index;
+    }
+    boolean[] stay = longestIncreasing(order);
+
+    // Place rows from the end, so each can be inserted before the one after it.
+    ArrayList<Element> created = new ArrayList<Element>();
+    Element after = null;
+    for (int i = next.size() - 1; i >= 0; --i) {
+      String key = next.get(i);
+      Element row = rows.get(key);
+      if (row == null) {
+        row = renderer.create(key, nextValues.get(i));
+        rows.put(key, row);
+        parent.insertBefore(row, after);
+        created.add(0, row);
+        ++inserted;
+      }
+      else {
+        renderer.update(key, nextValues.get(i), row);
+        if (!stay[i]) {
+          parent.insertBefore(row, after);
+          ++moved;
+        }
+      }
+      after = row;
+    }
+    this.keys = next;
+
+    if (created.size() > 0)
+      register.parseAll(created);
+  }
+
+  /** Returns the row for a key, or null. */
+  public Element getRow(String key) {
+    return(rows.get(key));
+  }
+
+  /** Returns the number of rows. */
+  public int size() {
+    return(keys.size());
+  }
+
+  /** Returns the number of rows inserted by the last update. */
+  public int getInserted() {
+    return(inserted);
+  }
+
+  /** Returns the number of rows moved by the last update. */
+  public int getMoved() {
+    return(moved);
+  }
+
+  /** Returns the number of rows removed by the last update. */
+  public int getRemoved() {
+    return(removed);
+  }
+
+  /**
+   * Marks the members of a longest strictly increasing subsequence.
+   * <p>
+   * Entries of -1 (new rows) are never part of it. O(n log n).
+   */
+  private static boolean[] longestIncreasing(int[] values) {
+    boolean[] rtn = new boolean[values.length];
+    int[] tails = new int[values.length];
+    int[] previous = new int[values.length];
+    int length = 0;
+    for (int i = 0; i < values.length; ++i) {
+      if (values[i] >= 0) {
+        int low = 0, high = length;
+        while (low < high) {
+          int mid = (low + high) >>> 1;
+          if (values[tails[mid]] < values[i])
+            low = mid + 1;
+          else
+            high = mid;
+        }
+        previous[i] = (low > 0) ? tails[low - 1] : -1;
+        tails[low] = i;
+        if (low == length)
+          ++length;
+      }
+    }
+    for (int i = (length > 0) ? tails[length - 1] : -1; i >= 0; i = previous[i])
+      rtn[i] = true;
+    return(rtn);
+  }
+}
@@ -0,0 +1,143 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.rebind;
+
+import java.io.PrintWriter;
+import java.util.TreeMap;
+
+import twisted.client.ComponentType;
+
+import com.google.gwt.core.ext.Generator;
+import com.google.gwt.core.ext.GeneratorContext;
+import com.google.gwt.core.ext.TreeLogger;
+import com.google.gwt.core.ext.UnableToCompleteException;
+import com.google.gwt.core.ext.typeinfo.JClassType;
+import com.google.gwt.core.ext.typeinfo.JConstructor;
+import com.google.gwt.core.ext.typeinfo.JType;
+import com.google.gwt.core.ext.typeinfo.TypeOracle;
+import com.google.gwt.user.rebind.ClassSourceFileComposerFactory;
+import com.google.gwt.user.rebind.SourceWriter;
+
+/**
+ * Deferred binding generator for GeneratedComponentFactory subclasses.
+ * <p>
+ * Every non-abstract Component subclass with a @ComponentType annotation
+ * is registered with the generated factory, keyed by its type; types
+ * marked split are created inside their own GWT.runAsync() call, named
+ * by the component class so it can be prefetched.
+ */
+public class ComponentFactoryGenerator extends Generator {
+	
+	/** The component base class. */
+	private static final String COMPONENT = "twisted.client.Component";
+	
+	/** The component container class. */
+	private static final String CONTAINER = "twisted.client.ComponentContainer";
+	
+	@Override
+	public String generate(TreeLogger logger, GeneratorContext context, String typeName) throws UnableToCompleteException {
+		TypeOracle oracle = context.getTypeOracle();
+		JClassType factory = oracle.findType(typeName);
+		if (factory == null) {
+			logger.log(TreeLogger.ERROR, "Unable to find metadata for type " + typeName);
+			throw new UnableToCompleteException();
+		}
+		
+		String packageName = factory.getPackage().getName();
+		String simpleName = factory.getName().replace('.', '_') + "Impl";
+		PrintWriter pw = context.tryCreate(logger, packageName, simpleName);
+		if (pw != null) {
+			TreeMap<String, JClassType> types = findTypes(logger, oracle);
+			ClassSourceFileComposerFactory composer = new ClassSourceFileComposerFactory(packageName, simpleName);
+			composer.setSuperclass(factory.getQualifiedSourceName());
+			composer.addImport("java.util.List");
+			composer.addImport("com.google.gwt.core.client.GWT");
+			composer.addImport("com.google.gwt.core.client.RunAsyncCallback");
+			composer.addImport("com.google.gwt.core.client.prefetch.RunAsyncCode");
+			composer.addImport(CONTAINER);
+			SourceWriter sw = composer.createSourceWriter(context, pw);
+			sw.println("public " + simpleName + "() {");
+			sw.indent();
+			for (String type : types.keySet()) 
+				writeCreator(sw, type, types.get(type));
+			sw.outdent();
+			sw.println("}");
+			sw.commit(logger);
+		}
+		return(packageName + "." + simpleName);
+	}
+	
+	/** Returns the annotated component classes, by type. */
+	private TreeMap<String, JClassType> findTypes(TreeLogger logger, TypeOracle oracle) throws UnableToCompleteException {
+		TreeMap<String, JClassType> rtn = new TreeMap<String, JClassType>();
+		JClassType component = oracle.findType(COMPONENT);
+		JType[] args = new JType[] { oracle.findType(CONTAINER) };
+		boolean failed = false;
+		for (JClassType c : component.getSubtypes()) {
+			ComponentType annotation = c.getAnnotation(ComponentType.class);
+			if ((annotation != null) && !c.isAbstract()) {
+				JConstructor constructor = c.findConstructor(args);
+				if ((constructor == null) || constructor.isPrivate()) {
+					logger.log(TreeLogger.ERROR, c.getQualifiedSourceName() + " has no (ComponentContainer) constructor");
+					failed = true;
+				}
+				else if (rtn.containsKey(annotation.value())) {
+					logger.log(TreeLogger.ERROR, "Component type " + annotation.value() + " is used by both " 
+							+ c.getQualifiedSourceName() + " and " + rtn.get(annotation.value()).getQualifiedSourceName());
+					failed = true;
+				}
+				else
+					rtn.put(annotation.value(), c);
+			}
+		}
+		if (failed)
+			throw new UnableToCompleteException();
+		return(rtn);
+	}
+	
+	/** Writes the register() call for one type. */
+	private void writeCreator(SourceWriter sw, String type, JClassType c) {
+		boolean split = c.getAnnotation(ComponentType.class).split();
+		sw.println("register(\"" + escape(type) + "\", new ComponentCreator() {");
+		sw.indent();
+		sw.println("public void create(final List<ComponentContainer> roots, final List<String> requestIds) {");
+		sw.indent();
+		if (split) {
+			sw.println("GWT.runAsync(" + c.getQualifiedSourceName() + ".class, new RunAsyncCallback() {");
+			sw.indent();
+			sw.println("public void onSuccess() {");
+			sw.indent();
+		}
+		sw.println("for (int i = 0; i < roots.size(); ++i)");
+		sw.indentln("componentCreated(new " + c.getQualifiedSourceName() + "(roots.get(i)), requestIds.get(i));");
+		if (split) {
+			sw.outdent();
+			sw.println("}");
+			sw.println("public void onFailure(Throwable reason) {");
+			sw.indentln("componentsFailed(roots, requestIds, reason);");
+			sw.println("}");
+			sw.outdent();
+			sw.println("});");
+		}
+		sw.outdent();
+		sw.println("}");
+		sw.outdent();
+		if (split)
+			sw.println("}, RunAsyncCode.runAsyncCode(" + c.getQualifiedSourceName() + ".class));");
+		else
+			sw.println("});");
+	}
+}
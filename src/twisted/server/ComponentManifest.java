@@ -0,0 +1,499 @@
+/** 
+ * Copyright 2010 Douglas Linder.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ * 
+ *     http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package twisted.server;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.LinkedHashMap;
+
+/** 
+ * Builds the component manifest for a page, from the page's markup.
+ * <p>
+ * Pages that list their components in a manifest can be started with
+ * ComponentRegister.parseManifest(), which creates the components without
+ * searching the DOM for them:
+ * <pre>
+ * 		String html = renderPage();
+ * 		ComponentManifest m = ComponentManifest.scan(html);
+ * 		out.print(html);
+ * 		out.print(m.toScript("components"));
+ * </pre>
+ * The markup is read the way a browser builds the DOM from it, including
+ * implied end tags (p, li, dt/dd, headings, option, table content) and 
+ * inserted tbody, tr and colgroup elements. Misnested formatting tags and
+ * content foster parented out of tables aren't handled; components whose
+ * paths don't match are found by the client, which searches the DOM for 
+ * those instead.
+ */
+public class ComponentManifest {
+	
+	/** Elements that never have content or an end tag. */
+	private static final HashSet<String> VOID = new HashSet<String>(Arrays.asList(
+			"area", "base", "br", "col", "embed", "hr", "img", "input", "keygen", 
+			"link", "meta", "param", "source", "track", "wbr"));
+	
+	/** Elements whose content is text, up to their end tag. */
+	private static final HashSet<String> RAW = new HashSet<String>(Arrays.asList(
+			"script", "style", "textarea", "title"));
+	
+	/** Elements whose start tag ends an open paragraph. */
+	private static final HashSet<String> CLOSES_P = new HashSet<String>(Arrays.asList(
+			"address", "article", "aside", "blockquote", "center", "details", "dd", "dialog", 
+			"dir", "div", "dl", "dt", "fieldset", "figcaption", "figure", "footer", "form", 
+			"h1", "h2", "h3", "h4", "h5", "h6", "header", "hgroup", "hr", "li", "listing", 
+			"main", "menu", "nav", "ol", "p", "pre", "section", "summary", "table", "ul"));
+	
+	/** Heading elements; a heading start tag ends an open heading. */
+	private static final HashSet<String> HEADINGS = new HashSet<String>(Arrays.asList(
+			"h1", "h2", "h3", "h4", "h5", "h6"));
+	
+	/** Table content whose start tag can close or insert other table elements. */
+	private static final HashSet<String> TABLE_CONTENT = new HashSet<String>(Arrays.asList(
+			"caption", "col", "colgroup", "tbody", "td", "tfoot", "th", "thead", "tr"));
+	
+	/** Elements a cell can be opened in (a tr is inserted unless it is one). */
+	private static final HashSet<String> CELL_PARENTS = new HashSet<String>(Arrays.asList(
+			"tr", "tbody", "thead", "tfoot", "table"));
+	
+	/** Elements a row can be opened in (a tbody is inserted if it is the table). */
+	private static final HashSet<String> ROW_PARENTS = new HashSet<String>(Arrays.asList(
+			"tbody", "thead", "tfoot", "table"));
+	
+	/** Elements a col can be opened in (a colgroup is inserted if it is the table). */
+	private static final HashSet<String> COL_PARENTS = new HashSet<String>(Arrays.asList(
+			"colgroup", "table"));
+	
+	/** The table itself. */
+	private static final HashSet<String> TABLE = new HashSet<String>(Arrays.asList(
+			"table"));
+	
+	/** Elements end tags and implied ends don't look past. */
+	private static final HashSet<String> DEFAULT_SCOPE = new HashSet<String>(Arrays.asList(
+			"applet", "caption", "html", "marquee", "object", "table", "td", "template", "th"));
+	
+	/** As DEFAULT_SCOPE, for paragraphs. */
+	private static final HashSet<String> BUTTON_SCOPE = new HashSet<String>(Arrays.asList(
+			"applet", "button", "caption", "html", "marquee", "object", "table", "td", "template", "th"));
+	
+	/** As DEFAULT_SCOPE, for list items. */
+	private static final HashSet<String> LIST_SCOPE = new HashSet<String>(Arrays.asList(
+			"applet", "caption", "dl", "html", "marquee", "object", "ol", "table", "td", "template", "th", "ul"));
+	
+	/** As DEFAULT_SCOPE, for table content. */
+	private static final HashSet<String> TABLE_SCOPE = new HashSet<String>(Arrays.asList(
+			"html", "table", "template"));
+	
+	/** A single component. */
+	private static class Entry {
+		
+		/** The component type. */
+		private String type;
+		
+		/** The root element id, or null. */
+		private String id;
+		
+		/** Path to the root element. */
+		private int[] path;
+		
+		/** Paths to values, by name. */
+		private LinkedHashMap<String, ArrayList<int[]>> values = new LinkedHashMap<String, ArrayList<int[]>>();
+		
+		/** Paths to assets, by name. */
+		private LinkedHashMap<String, ArrayList<int[]>> assets = new LinkedHashMap<String, ArrayList<int[]>>();
+		
+		private void add(LinkedHashMap<String, ArrayList<int[]>> map, String name, int[] path) {
+			ArrayList<int[]> set = map.get(name);
+			if (set == null) {
+				set = new ArrayList<int[]>();
+				map.put(name, set);
+			}
+			set.add(path);
+		}
+	}
+	
+	/** An open element, while scanning. */
+	private static class Node {
+		
+		/** The tag name, in lower case. */
+		private String name;
+		
+		/** Path from the manifest root. */
+		private int[] path;
+		
+		/** Number of child elements so far. */
+		private int children = 0;
+		
+		/** The component this element and its content belong to, if any. */
+		private Entry owner;
+		
+		/** Path of the owner's root element. */
+		private int[] ownerPath;
+	}
+	
+	/** The components, in document order. */
+	private ArrayList<Entry> entries = new ArrayList<Entry>();
+	
+	/** 
+	 * Builds the manifest for the given markup.
+	 * <p>
+	 * If the markup has a body element paths are from it; otherwise the
+	 * markup is taken to be the content of the body. Every element with the
+	 * Component class is listed, with the ComponentValue and ComponentAsset
+	 * elements that belong to it (and not to a nested component).
+	 */
+	public static ComponentManifest scan(String html) {
+		ComponentManifest rtn = new ComponentManifest();
+		ArrayList<Node> stack = new ArrayList<Node>();
+		Node top = new Node();
+		top.name = "";
+		top.path = new int[0];
+		stack.add(top);
+		int offset = 0;
+		while ((offset = html.indexOf('<', offset)) != -1) {
+			if (html.startsWith("<!--", offset)) 
+				offset = skipTo(html, "-->", offset + 4);
+			else if (html.startsWith("<!", offset) || html.startsWith("<?", offset)) 
+				offset = skipTo(html, ">", offset + 2);
+			else if (html.startsWith("</", offset)) {
+				rtn.end(stack, tagName(html, offset + 2));
+				offset = skipTo(html, ">", offset + 2);
+			}
+			else if ((offset + 1 < html.length()) && Character.isLetter(html.charAt(offset + 1))) {
+				int end = tagEnd(html, offset + 1);
+				String tag = html.substring(offset + 1, end);
+				String name = tagName(html, offset + 1);
+				rtn.start(stack, name, attribute(tag, "class"), attribute(tag, "id"));
+				offset = Math.min(end + 1, html.length());
+				if (RAW.contains(name)) 
+					offset = skipTo(html, "</" + name, offset);
+			}
+			else
+				++offset;
+		}
+		return(rtn);
+	}
+	
+	/** 
+	 * Deals with a start tag.
+	 * <p>
+	 * Open elements the tag implicitly ends are closed first, and elements 
+	 * the browser would insert (tbody, tr, colgroup) are opened; as per the
+	 * HTML parsing rules, for the cases that matter to paths.
+	 */
+	private void start(ArrayList<Node> stack, String name, String classname, String id) {
+		if (CLOSES_P.contains(name) && (find(stack, "p", BUTTON_SCOPE) != -1))
+			close(stack, find(stack, "p", BUTTON_SCOPE));
+		if (name.equals("li") && (find(stack, "li", LIST_SCOPE) != -1)) 
+			close(stack, find(stack, "li", LIST_SCOPE));
+		else if (name.equals("dt") || name.equals("dd")) {
+			int i = Math.max(find(stack, "dt", LIST_SCOPE), find(stack, "dd", LIST_SCOPE));
+			if (i != -1)
+				close(stack, i);
+		}
+		else if (HEADINGS.contains(name) && HEADINGS.contains(current(stack).name))
+			close(stack, stack.size() - 1);
+		else if (name.equals("option") || name.equals("optgroup")) {
+			if (current(stack).name.equals("option"))
+				close(stack, stack.size() - 1);
+			if (name.equals("optgroup") && current(stack).name.equals("optgroup"))
+				close(stack, stack.size() - 1);
+		}
+		else if (TABLE_CONTENT.contains(name) && (find(stack, "table", TABLE_SCOPE) != -1)) {
+			// Back to the nearest table, section or row, as the tag allows.
+			HashSet<String> keep = TABLE;
+			if (name.equals("td") || name.equals("th"))
+				keep = CELL_PARENTS;
+			else if (name.equals("tr"))
+				keep = ROW_PARENTS;
+			else if (name.equals("col"))
+				keep = COL_PARENTS;
+			while (!keep.contains(current(stack).name))
+				close(stack, stack.size() - 1);
+			if (name.equals("col") && current(stack).name.equals("table"))
+				open(stack, "colgroup", null, null);
+			else if ((name.equals("tr") || name.equals("td") || name.equals("th")) && current(stack).name.equals("table"))
+				open(stack, "tbody", null, null);
+			if ((name.equals("td") || name.equals("th")) && !current(stack).name.equals("tr"))
+				open(stack, "tr", null, null);
+		}
+		open(stack, name, classname, id);
+		if (VOID.contains(name) || RAW.contains(name))
+			close(stack, stack.size() - 1);
+	}
+	
+	/** 
+	 * Deals with an end tag.
+	 * <p>
+	 * The matching open element is closed, along with anything still open
+	 * inside it; end tags with no match in scope are ignored, except for 
+	 * p, which browsers turn into an empty paragraph. The body and html
+	 * end tags are ignored, as browsers put anything after them in the body.
+	 */
+	private void end(ArrayList<Node> stack, String name) {
+		if (!name.equals("body") && !name.equals("html")) {
+			int i = find(stack, name, name.equals("p") ? BUTTON_SCOPE : DEFAULT_SCOPE);
+			if (i != -1)
+				close(stack, i);
+			else if (name.equals("p")) {
+				open(stack, "p", null, null);
+				close(stack, stack.size() - 1);
+			}
+			else if (name.equals("br")) 
+				start(stack, "br", null, null);
+		}
+	}
+	
+	/** Opens a new element as the last child of the current one. */
+	private void open(ArrayList<Node> stack, String name, String classname, String id) {
+		Node parent = current(stack);
+		Node node = new Node();
+		node.name = name;
+		node.owner = parent.owner;
+		node.ownerPath = parent.ownerPath;
+		if (name.equals("body")) 
+			node.path = new int[0]; // The manifest root.
+		else {
+			node.path = new int[parent.path.length + 1];
+			System.arraycopy(parent.path, 0, node.path, 0, parent.path.length);
+			node.path[parent.path.length] = parent.children++;
+			add(node, classname, id);
+		}
+		stack.add(node);
+	}
+	
+	/** Closes the element at index i of the stack, and everything open inside it. */
+	private static void close(ArrayList<Node> stack, int i) {
+		while (stack.size() > Math.max(i, 1))
+			stack.remove(stack.size() - 1);
+	}
+	
+	/** Returns the current element. */
+	private static Node current(ArrayList<Node> stack) {
+		return(stack.get(stack.size() - 1));
+	}
+	
+	/** Returns the stack index of the nearest open element with the given name, or -1 if there isn't one inside the scope. */
+	private static int find(ArrayList<Node> stack, String name, HashSet<String> scope) {
+		int rtn = -1;
+		for (int i = stack.size() - 1; (rtn == -1) && (i > 0); --i) {
+			String open = stack.get(i).name;
+			if (open.equals(name))
+				rtn = i;
+			else if (scope.contains(open))
+				break;
+		}
+		return(rtn);
+	}
+	
+	/** Records an element, if it is a component, value or asset. */
+	private void add(Node node, String classname, String id) {
+		if (classname != null) {
+			String[] classes = classname.trim().split("\\s+");
+			boolean component = false, value = false, asset = false;
+			for (String c : classes) {
+				component |= c.equals("Component");
+				value |= c.equals("ComponentValue");
+				asset |= c.equals("ComponentAsset");
+			}
+			for (String c : classes) {
+				if (c.startsWith("ComponentId-") && (node.owner != null)) {
+					String name = c.substring("ComponentId-".length());
+					int[] path = new int[node.path.length - node.ownerPath.length];
+					System.arraycopy(node.path, node.ownerPath.length, path, 0, path.length);
+					if (value)
+						node.owner.add(node.owner.values, name, path);
+					if (asset)
+						node.owner.add(node.owner.assets, name, path);
+				}
+			}
+			if (component) {
+				Entry entry = new Entry();
+				entry.id = (id != null) && (id.length() > 0) ? id : null;
+				entry.path = node.path;
+				for (String c : classes) {
+					if (c.startsWith("ComponentId-")) {
+						entry.type = c.substring("ComponentId-".length());
+						break;
+					}
+				}
+				if (entry.type != null) {
+					entries.add(entry);
+					node.owner = entry;
+					node.ownerPath = node.path;
+				}
+			}
+		}
+	}
+	
+	/** Returns the offset just after the next match of target, or the end of html. */
+	private static int skipTo(String html, String target, int offset) {
+		int rtn = html.indexOf(target, offset);
+		return(rtn == -1 ? html.length() : rtn + target.length());
+	}
+	
+	/** Returns the lower case tag name starting at offset. */
+	private static String tagName(String html, int offset) {
+		int end = offset;
+		while ((end < html.length()) && (Character.isLetterOrDigit(html.charAt(end)) || (html.charAt(end) == '-')))
+			++end;
+		return(html.substring(offset, end).toLowerCase());
+	}
+	
+	/** Returns the offset of the '>' that ends the tag starting at offset, allowing for quoted attributes. */
+	private static int tagEnd(String html, int offset) {
+		char quote = 0;
+		int rtn = offset;
+		for (; rtn < html.length(); ++rtn) {
+			char c = html.charAt(rtn);
+			if (quote != 0) {
+				if (c == quote)
+					quote = 0;
+			}
+			else if ((c == '"') || (c == '\''))
+				quote = c;
+			else if (c == '>')
+				break;
+		}
+		return(rtn);
+	}
+	
+	/** Returns the value of the named attribute in tag, or null if it doesn't have one. */
+	private static String attribute(String tag, String name) {
+		String rtn = null;
+		int i = tagName(tag, 0).length();
+		while ((rtn == null) && (i < tag.length())) {
+			while ((i < tag.length()) && (Character.isWhitespace(tag.charAt(i)) || (tag.charAt(i) == '/')))
+				++i;
+			int start = i;
+			while ((i < tag.length()) && !Character.isWhitespace(tag.charAt(i)) && ("=/>".indexOf(tag.charAt(i)) == -1))
+				++i;
+			String key = tag.substring(start, i);
+			while ((i < tag.length()) && Character.isWhitespace(tag.charAt(i)))
+				++i;
+			String value = "";
+			if ((i < tag.length()) && (tag.charAt(i) == '=')) {
+				++i;
+				while ((i < tag.length()) && Character.isWhitespace(tag.charAt(i)))
+					++i;
+				if ((i < tag.length()) && ((tag.charAt(i) == '"') || (tag.charAt(i) == '\''))) {
+					int end = tag.indexOf(tag.charAt(i), i + 1);
+					if (end == -1)
+						end = tag.length();
+					value = tag.substring(i + 1, end);
+					i = end + 1;
+				}
+				else {
+					start = i;
+					while ((i < tag.length()) && !Character.isWhitespace(tag.charAt(i)))
+						++i;
+					value = tag.substring(start, i);
+				}
+			}
+			if (key.length() == 0)
+				++i;
+			else if (key.equalsIgnoreCase(name))
+				rtn = decode(value);
+		}
+		return(rtn);
+	}
+	
+	/** Decodes the common character references. */
+	private static String decode(String value) {
+		return(value.replace("&quot;", "\"").replace("&#39;", "'").replace("&lt;", "<").replace("&gt;", ">").replace("&amp;", "&"));
+	}
+	
+	/** Returns the manifest as JSON. */
+	public String toJson() {
+		StringBuilder rtn = new StringBuilder();
+		rtn.append('[');
+		for (int i = 0; i < entries.size(); ++i) {
+			Entry e = entries.get(i);
+			if (i > 0)
+				rtn.append(',');
+			rtn.append("{\"t\":");
+			appendString(rtn, e.type);
+			if (e.id != null) {
+				rtn.append(",\"i\":");
+				appendString(rtn, e.id);
+			}
+			rtn.append(",\"p\":");
+			appendPath(rtn, e.path);
+			if (e.values.size() > 0) {
+				rtn.append(",\"v\":");
+				appendPaths(rtn, e.values);
+			}
+			if (e.assets.size() > 0) {
+				rtn.append(",\"a\":");
+				appendPaths(rtn, e.assets);
+			}
+			rtn.append('}');
+		}
+		rtn.append(']');
+		return(rtn.toString());
+	}
+	
+	/** Returns a script tag that stores the manifest in the named global variable. */
+	public String toScript(String name) {
+		// "</" would end the script tag early.
+		String json = toJson().replace("</", "<\\/");
+		return("<script type=\"text/javascript\">var " + name + "=" + json + ";</script>");
+	}
+	
+	private static void appendPaths(StringBuilder out, LinkedHashMap<String, ArrayList<int[]>> map) {
+		out.append('{');
+		boolean first = true;
+		for (String name : map.keySet()) {
+			if (!first)
+				out.append(',');
+			first = false;
+			appendString(out, name);
+			out.append(":[");
+			ArrayList<int[]> paths = map.get(name);
+			for (int i = 0; i < paths.size(); ++i) {
+				if (i > 0)
+					out.append(',');
+				appendPath(out, paths.get(i));
+			}
+			out.append(']');
+		}
+		out.append('}');
+	}
+	
+	private static void appendPath(StringBuilder out, int[] path) {
+		out.append('[');
+		for (int i = 0; i < path.length; ++i) {
+			if (i > 0)
+				out.append(',');
+			out.append(path[i]);
+		}
+		out.append(']');
+	}
+	
+	private static void appendString(StringBuilder out, String value) {
+		out.append('"');
+		for (int i = 0; i < value.length(); ++i) {
+			char c = value.charAt(i);
+			if ((c == '"') || (c == '\\'))
+				out.append('\\').append(c);
+			else if (c < 0x20) 
+				out.append(String.format("\\u%04x", (int) c));
+			else
+				out.append(c);
+		}
+		out.append('"');
+	}
+}
@@ -16,6 +16,8 @@
 
 package twisted.server;
 
+import java.io.IOException;
+
 import javax.servlet.http.HttpServlet;
 import javax.servlet.http.HttpServletRequest;
 import javax.servlet.http.HttpServletResponse;
@@ -36,4 +38,17 @@ public abstract class ComponentServlet extends HttpServlet implements ComponentS
 	
 	/** Handles the service requests. */
 	protected abstract void doRequest(HttpServletRequest req, HttpServletResponse resp);
+	
+	/** 
+	 * Writes a component manifest as the response.
+	 * <p>
+	 * For pages that fetch their manifest rather than including it with 
+	 * ComponentManifest.toScript(); evaluate it with JsonUtils.safeEval() and
+	 * pass the result to ComponentRegister.parseManifest().
+	 */
+	protected void writeManifest(HttpServletResponse resp, ComponentManifest manifest) throws IOException {
+		resp.setContentType("application/json");
+		resp.setCharacterEncoding("utf-8");
+		resp.getWriter().write(manifest.toJson());
+	}
 }
\ No newline at end of file
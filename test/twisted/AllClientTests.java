@@ -4,13 +4,25 @@ import junit.framework.Test;
 import junit.framework.TestSuite;
 import com.google.gwt.junit.tools.GWTTestSuite;
 import twisted.client.ComponentContainerTests;
+import twisted.client.ComponentDisposalTests;
 import twisted.client.ComponentRegisterTests;
+import twisted.client.ComponentTemplateTests;
+import twisted.client.impl.ComponentIndexTests;
+import twisted.client.utils.CommonEventsTests;
+import twisted.client.utils.DomBatchTests;
+import twisted.client.utils.KeyedListTests;
 
 public class AllClientTests extends GWTTestSuite {
     public static Test suite() {
         TestSuite suite = new TestSuite("Tests for: twisted.client");
         suite.addTestSuite(ComponentContainerTests.class);
         suite.addTestSuite(ComponentRegisterTests.class);
+        suite.addTestSuite(ComponentDisposalTests.class);
+        suite.addTestSuite(ComponentTemplateTests.class);
+        suite.addTestSuite(ComponentIndexTests.class);
+        suite.addTestSuite(KeyedListTests.class);
+        suite.addTestSuite(DomBatchTests.class);
+        suite.addTestSuite(CommonEventsTests.class);
         return suite;
     }
 }
\ No newline at end of file
@@ -0,0 +1,94 @@
+package twisted.client;
+
+import twisted.client.events.ComponentClickListener;
+import twisted.client.events.ComponentKeyListener;
+import twisted.client.impl.ComponentFrame;
+import twisted.client.sample.SampleFactory;
+import twisted.client.utils.GenericCallback;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.event.dom.client.ClickEvent;
+import com.google.gwt.event.dom.client.ClickHandler;
+import com.google.gwt.event.dom.client.KeyUpEvent;
+import com.google.gwt.event.dom.client.KeyUpHandler;
+import com.google.gwt.junit.client.GWTTestCase;
+
+public class ComponentDisposalTests extends GWTTestCase {
+	
+	/** Number of create / remove cycles. */
+	private static final int CYCLES = 5;
+	
+	/** Number of components per cycle. */
+	private static final int COMPONENTS = 20;
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    /** Total size of the static element caches. */
+    private int cacheSize() {
+    	return(ComponentFrame.getCacheSize() + ComponentContainer.getCacheSize() + 
+    			ComponentClickListener.getCacheSize() + ComponentKeyListener.getCacheSize());
+    }
+    
+    /** Total size of the static element caches and the register's own. */
+    private int cacheSize(ComponentRegister r) {
+    	return(cacheSize() + r.getCacheSize());
+    }
+    
+    private Element pageContent() {
+    	StringBuilder data = new StringBuilder();
+    	for (int i = 0; i < COMPONENTS; ++i) 
+    		data.append("<div class=\"Component ComponentId-SampleB\" id=\"Disposal" + i + "\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">Value</div></div>");
+    	Element block = Document.get().createDivElement();
+    	block.setInnerHTML(data.toString());
+    	Document.get().getBody().appendChild(block);
+    	return(block);
+    }
+    
+    /** Creates components, binds events to them, removes them, and checks nothing is left. */
+    private void cycle(final ComponentRegister r, final int baseline, final int remaining) {
+    	final Element block = pageContent();
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				for (int i = 0; i < COMPONENTS; ++i) {
+					Component c = r.getComponent("Disposal" + i);
+					assertNotNull(c);
+					ComponentClickListener.get(c.getContainer().getRootElement()).addClickHandler(new ClickHandler() {
+						public void onClick(ClickEvent event) {
+						}
+					});
+					ComponentKeyListener.get(c.getContainer().getAsset("Asset1")).addKeyUpHandler(new KeyUpHandler() {
+						public void onKeyUp(KeyUpEvent event) {
+						}
+					});
+				}
+				assertTrue(cacheSize(r) > baseline);
+				
+				r.removeComponents(block);
+				block.removeFromParent();
+				assertNull(r.getComponent("Disposal0"));
+				assertEquals(0, r.getCacheSize());
+				assertEquals(baseline, cacheSize(r));
+				
+				if (remaining > 1)
+					cycle(r, baseline, remaining - 1);
+				else
+					finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	r.parse(block);
+    }
+    
+    public void testCreateRemoveCycles() {
+    	ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	delayTestFinish(20000);
+    	cycle(r, cacheSize(r), CYCLES);
+    }
+}
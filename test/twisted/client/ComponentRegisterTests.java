@@ -1,7 +1,19 @@
 package twisted.client;
 
+import java.util.ArrayList;
+import java.util.Arrays;
+
 import twisted.client.sample.SampleFactory;
+import twisted.client.sample.SampleGeneratedFactory;
+import twisted.client.sample.SampleOrder;
+import twisted.client.impl.ComponentManifestEntry;
+import twisted.client.impl.DomObserver;
+import twisted.client.impl.ViewportObserver;
+import twisted.client.utils.GenericCallback;
 
+import com.google.gwt.core.client.GWT;
+import com.google.gwt.core.client.JsArray;
+import com.google.gwt.core.client.JsonUtils;
 import com.google.gwt.dom.client.Document;
 import com.google.gwt.dom.client.Element;
 import com.google.gwt.junit.client.GWTTestCase;
@@ -42,6 +54,114 @@ public class ComponentRegisterTests extends GWTTestCase {
     	r.parse(root);
     }
     
+    public void testParseGenerated() {
+    	GeneratedComponentFactory f = GWT.create(SampleGeneratedFactory.class);
+    	assertTrue(f.hasType("SampleA"));
+    	assertTrue(f.hasType("SampleC"));
+    	assertFalse(f.hasType("SampleZ"));
+    	final ComponentRegister r = new ComponentRegister(f);
+    	Element root = pageContent();
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				assertNotNull(r.getComponent("IdSetToA"));
+				assertNotNull(r.getComponent("IdSetToC"));
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(root);
+    }
+    
+    public void testParseManifest() {
+    	String data = "<div class=\"Component ComponentId-SampleB\" id=\"ManifestB\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">Value</div></div>";
+    	String manifest = "[{\"t\":\"SampleB\",\"i\":\"ManifestB\",\"p\":[0,0],\"v\":{\"Value1\":[[1]]},\"a\":{\"Asset1\":[[0]]}}]";
+    	Element root = Document.get().getBody();
+    	root.setInnerHTML("");
+    	Element block = Document.get().createDivElement();
+    	block.setInnerHTML(data);
+    	root.appendChild(block);
+    	
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				Component c = r.getComponent("ManifestB");
+				assertNotNull(c);
+				assertTrue(c.active());
+				assertEquals("Value", c.getContainer().getValue("Value1"));
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	JsArray<ComponentManifestEntry> entries = JsonUtils.safeEval(manifest);
+    	r.parseManifest(entries, root);
+    }
+    
+    /** A manifest with a stale value path is ignored, and the page parsed instead. */
+    public void testParseManifestStale() {
+    	String data = "<div class=\"Component ComponentId-SampleB\" id=\"ManifestB\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">Value</div></div>";
+    	String manifest = "[{\"t\":\"SampleB\",\"i\":\"ManifestB\",\"p\":[0,0],\"v\":{\"Value1\":[[0]]},\"a\":{\"Asset1\":[[0]]}}]";
+    	Element root = Document.get().getBody();
+    	root.setInnerHTML("");
+    	Element block = Document.get().createDivElement();
+    	block.setInnerHTML(data);
+    	root.appendChild(block);
+    	
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				Component c = r.getComponent("ManifestB");
+				assertNotNull(c);
+				assertTrue(c.active());
+				assertEquals("Value", c.getContainer().getValue("Value1"));
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	JsArray<ComponentManifestEntry> entries = JsonUtils.safeEval(manifest);
+    	r.parseManifest(entries, root);
+    }
+    
+    public void testParseManifestPartial() {
+    	// B's value path is stale and C is missing from the manifest; A is still primed.
+    	String data = "<div class=\"Component ComponentId-SampleB\" id=\"PartialA\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">A</div></div>" + 
+    			"<div class=\"Component ComponentId-SampleB\" id=\"PartialB\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">B</div></div>" + 
+    			"<div class=\"Component ComponentId-SampleB\" id=\"PartialC\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">C</div></div>";
+    	String manifest = "[{\"t\":\"SampleB\",\"i\":\"PartialA\",\"p\":[0,0],\"v\":{\"Value1\":[[1]]},\"a\":{\"Asset1\":[[0]]}}," + 
+    			"{\"t\":\"SampleB\",\"i\":\"PartialB\",\"p\":[0,1],\"v\":{\"Value1\":[[0]]},\"a\":{\"Asset1\":[[0]]}}," + 
+    			"{\"t\":\"SampleB\",\"i\":\"PartialC\",\"p\":[0,5]}]";
+    	Element root = Document.get().getBody();
+    	root.setInnerHTML("");
+    	Element block = Document.get().createDivElement();
+    	block.setInnerHTML(data);
+    	root.appendChild(block);
+    	
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				assertEquals("A", r.getComponent("PartialA").getContainer().getValue("Value1"));
+				assertEquals("B", r.getComponent("PartialB").getContainer().getValue("Value1"));
+				assertEquals("C", r.getComponent("PartialC").getContainer().getValue("Value1"));
+				assertEquals(3, r.getComponentsByType("SampleB").size());
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	JsArray<ComponentManifestEntry> entries = JsonUtils.safeEval(manifest);
+    	r.parseManifest(entries, root);
+    }
+    
     public Element pageBadContent() {
     	// Bring on multi-line strings. :/
     	String data = " <div class=\"Component ComponentId-SampleA\" id=\"IdSetToA\"> <div class=\"ComponentAsset ComponentId-Asset1\"/> <div class=\"ComponentValue ComponentId-Value1\">Value</div> </div> <div class=\"Component ComponentId-SampleB\" id=\"IdSetToB\"> <div class=\"ComponentAsset ComponentId-Asset1\"/> <div class=\"ComponentValue ComponentId-Value1\">Value</div> </div> <div class=\"Component ComponentId-SampleC\" id=\"IdSetToC\"> <div class=\"ComponentAsset ComponentId-Asset1\"/> </div> ";
@@ -69,4 +189,234 @@ public class ComponentRegisterTests extends GWTTestCase {
     	delayTestFinish(10000);
     }
     
+    /** 
+     * Replaces the page with SampleOrder components.
+     * <p>
+     * Each entry is "id", "id:requires,..." or "id:requires:classes". 
+     */
+    public Element orderContent(String... components) {
+    	Element rtn = Document.get().getBody();
+    	rtn.setInnerHTML("");
+    	Element block = Document.get().createDivElement();
+    	for (String component : components) {
+    		String[] parts = component.split(":");
+    		Element e = Document.get().createDivElement();
+    		e.setId(parts[0]);
+    		e.setClassName("Component ComponentId-SampleOrder" + (parts.length > 2 ? " " + parts[2] : ""));
+    		if ((parts.length > 1) && (parts[1].length() > 0))
+    			e.setAttribute("data-requires", parts[1]);
+    		block.appendChild(e);
+    	}
+    	rtn.appendChild(block);
+    	SampleOrder.reset();
+    	return(rtn);
+    }
+    
+    /** Finishes the test once ready() returns true; start it with scheduleRepeating(). */
+    private abstract class Poll extends Timer {
+    	public abstract boolean ready();
+    	@Override
+    	public void run() {
+    		if (ready()) {
+    			cancel();
+    			finishTest();
+    		}
+    	}
+    }
+    
+    /** Asserts the SampleOrder components ran in the given order. */
+    private static void assertOrder(String... ids) {
+    	assertEquals(Arrays.asList(ids), SampleOrder.order);
+    }
+    
+    /** A dependency chain runs in the same order as the original run list scan gave. */
+    public void testRunOrder() {
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	Element root = orderContent("C:B", "B:A", "A", "D");
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				// The first dependency free component in init order is always run next.
+				assertOrder("A", "B", "C", "D");
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(root);
+    }
+    
+    /** No more than the concurrency limit run at once; failures release their slot as completions do. */
+    public void testConcurrency() {
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	r.setConcurrency(2);
+    	Element root = orderContent("A", "B::SampleFail", "C", "D", "E::SampleFail", "F");
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				assertOrder("A", "B", "C", "D", "E", "F");
+				assertEquals(2, SampleOrder.maxRunning);
+				assertEquals(0, SampleOrder.running);
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(root);
+    }
+    
+    /** Higher priorities run first, and the components they wait on inherit their priority. */
+    public void testPriority() {
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	Element root = orderContent("Low", "Other", "High:Dep:ComponentPriority-5", "Dep", "Urgent::ComponentPriority-2");
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				assertOrder("Dep", "High", "Urgent", "Low", "Other");
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(root);
+    }
+    
+    /** Roots already waiting on a creation request are not requested again. */
+    public void testParseTwice() {
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	Element root = orderContent("A", "B:A");
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				assertEquals(2, SampleOrder.created);
+				assertEquals(2, r.getComponentsByType("SampleOrder").size());
+				assertOrder("A", "B");
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(root);
+    	r.parse(root);
+    }
+    
+    /** Watched content is created when inserted, once, and removed when removed. */
+    public void testWatch() {
+    	if (DomObserver.isSupported()) {
+	    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+	    	final Element root = orderContent("A");
+	    	r.watch(root);
+	    	r.parse(root);
+	    	
+	    	// As KeyedList does; the watch sees the same element.
+	    	final Element inserted = Document.get().createDivElement();
+	    	inserted.setId("Inserted");
+	    	inserted.setClassName("Component ComponentId-SampleOrder");
+	    	root.appendChild(inserted);
+	    	ArrayList<Element> roots = new ArrayList<Element>();
+	    	roots.add(inserted);
+	    	r.parseAll(roots);
+	    	
+	    	delayTestFinish(10000);
+	    	new Poll() {
+	    		private boolean removed = false;
+	    		public boolean ready() {
+	    			boolean rtn = false;
+	    			Component c = r.getComponent("Inserted");
+	    			if (!removed) {
+	    				if ((c != null) && c.active()) {
+	    					assertEquals(2, SampleOrder.created);
+	    					inserted.removeFromParent();
+	    					removed = true;
+	    				}
+	    			}
+	    			else 
+	    				rtn = (c == null) && (r.getComponent(inserted) == null);
+	    			return(rtn);
+	    		}
+	    	}.scheduleRepeating(20);
+    	}
+    }
+    
+    /** Lazy components are created when required, and ready listeners run even if nothing was created. */
+    public void testLazy() {
+    	if (ViewportObserver.isSupported()) {
+	    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+	    	final boolean[] ready = new boolean[1];
+	    	Element root = orderContent("Visible:Hidden", "Hidden");
+	    	Document.get().getElementById("Hidden").getStyle().setProperty("marginTop", "100000px");
+	    	r.setLazy(true, 0);
+	    	r.attachReadyListener(new GenericCallback<Void>() {
+				public void onSuccess(Void result) {
+					assertTrue(SampleOrder.order.isEmpty());
+					ready[0] = true;
+				}
+				public void onFailure(Throwable caught) {
+					fail(caught.toString());
+				}
+	    	});
+	    	delayTestFinish(10000);
+	    	r.parse(root);
+	    	new Poll() {
+	    		public boolean ready() {
+	    			return(ready[0] && SampleOrder.order.equals(Arrays.asList("Hidden", "Visible")));
+	    		}
+	    	}.scheduleRepeating(20);
+    	}
+    }
+    
+    /** Components waiting on a lazy component that can't be created fail. */
+    public void testLazyFailed() {
+    	if (ViewportObserver.isSupported()) {
+	    	final ComponentRegister r = new ComponentRegister(new SampleFactory() {
+	    		@Override
+	    		public void createComponent(ComponentContainer root, String requestId) {
+	    			if (root.getRootElement().getId().equals("Broken"))
+	    				root.getRegister().componentCreationFailed(requestId);
+	    			else
+	    				super.createComponent(root, requestId);
+	    		}
+	    	});
+	    	Element root = orderContent("Visible:Broken", "Broken");
+	    	Document.get().getElementById("Broken").getStyle().setProperty("marginTop", "100000px");
+	    	r.setLazy(true, 0);
+	    	delayTestFinish(10000);
+	    	r.parse(root);
+	    	new Poll() {
+	    		public boolean ready() {
+	    			Component c = r.getComponent("Visible");
+	    			return((c != null) && c.active() && SampleOrder.order.isEmpty());
+	    		}
+	    	}.scheduleRepeating(20);
+    	}
+    }
+    
+    /** Background components run when idle, unless a normal component needs them first. */
+    public void testBackground() {
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	Element root = orderContent("Idle", "Critical:Needed", "Needed");
+    	Document.get().getElementById("Idle").setClassName("Component ComponentId-SampleBackground");
+    	Document.get().getElementById("Needed").setClassName("Component ComponentId-SampleBackground");
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				// Needed was promoted, rather than left for an idle slot.
+				assertTrue(SampleOrder.order.contains("Critical"));
+				assertTrue(SampleOrder.order.indexOf("Needed") < SampleOrder.order.indexOf("Critical"));
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(root);
+    	new Poll() {
+    		public boolean ready() {
+    			return(SampleOrder.order.size() == 3);
+    		}
+    	}.scheduleRepeating(20);
+    }
 }
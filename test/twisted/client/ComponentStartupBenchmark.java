@@ -0,0 +1,60 @@
+package twisted.client;
+
+import twisted.client.sample.SampleFactory;
+import twisted.client.utils.GenericCallback;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Measures startup latency for a long chain of dependent components.
+ * <p>
+ * Each component in the chain can only run once the one before it has
+ * completed, so this is dominated by the cost of each async dispatch.
+ * Not part of AllClientTests; run it directly when changing the scheduler.
+ */
+public class ComponentStartupBenchmark extends GWTTestCase {
+    
+    /** Number of components in the chain. */
+    private static final int CHAIN = 1000;
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    public Element pageContent() {
+    	Element rtn = Document.get().getBody();
+    	rtn.setInnerHTML("");
+    	Element block = Document.get().createDivElement();
+    	for (int i = 0; i < CHAIN; ++i) {
+    		Element e = Document.get().createDivElement();
+    		e.setClassName("Component ComponentId-SampleChain");
+    		e.setId("Chain-" + i);
+    		block.appendChild(e);
+    	}
+    	rtn.appendChild(block);
+    	return(rtn);
+    }
+    
+    public void testChainedStartup() {
+    	SampleFactory f = new SampleFactory();
+    	ComponentRegister r = new ComponentRegister(f);
+    	Element root = pageContent();
+    	final Duration d = new Duration();
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+			public void onSuccess(Void result) {
+				ComponentLog.trace(CHAIN + " chained components started in " + d.elapsedMillis() + "ms");
+				finishTest();
+			}
+    	});
+    	delayTestFinish(60000);
+    	r.parse(root);
+    }
+}
@@ -0,0 +1,61 @@
+package twisted.client;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+
+public class ComponentTemplateTests extends GWTTestCase {
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    /** A component with a value, an asset, and a nested component with a value of the same name. */
+    public Element genTemplate() {
+    	Element rtn = Document.get().createDivElement();
+    	rtn.setClassName("Component ComponentId-Row");
+    	rtn.setInnerHTML("<span class=\"ComponentValue ComponentId-Name\"></span>" +
+    			"<div class=\"Component ComponentId-Inner\"><span class=\"ComponentValue ComponentId-Name\">Inner</span></div>" +
+    			"<div><div class=\"ComponentAsset ComponentId-Icon\"></div></div>");
+    	return(rtn);
+    }
+    
+    public void testCreate() {
+    	ComponentTemplate t = new ComponentTemplate(genTemplate());
+    	Element icon = Document.get().createImageElement();
+    	Element e = t.create().setId("ComponentId-Row", "row1").setId("ComponentId-Inner", "inner1")
+    			.setValue("Name", "Bob").setAsset("Icon", icon).getElement();
+    	
+    	assertEquals("row1", e.getId());
+    	ComponentContainer c = new ComponentContainer(e, null);
+    	assertEquals("Bob", c.getValue("Name"));
+    	assertEquals(icon, c.getAsset("Icon"));
+    	
+    	Element inner = ComponentContainer.getElementById("inner1", e);
+    	assertNotNull(inner);
+    	assertEquals("Inner", new ComponentContainer(inner, null).getValue("Name"));
+    }
+    
+    public void testInstancesAreIndependent() {
+    	Element template = genTemplate();
+    	ComponentTemplate t = new ComponentTemplate(template);
+    	Element a = t.create().setValue("Name", "A").getElement();
+    	Element b = t.create().setValue("Name", "B").getElement();
+    	assertEquals("A", new ComponentContainer(a, null).getValue("Name"));
+    	assertEquals("B", new ComponentContainer(b, null).getValue("Name"));
+    	assertEquals("", new ComponentContainer(template, null).getValue("Name"));
+    }
+    
+    public void testBatch() {
+    	ComponentTemplate t = new ComponentTemplate(genTemplate());
+    	ComponentTemplate.Batch batch = t.batch();
+    	for (int i = 0; i < 10; ++i) 
+    		batch.add().setId("ComponentId-Row", "batch" + i);
+    	Element parent = Document.get().createDivElement();
+    	batch.appendTo(parent);
+    	assertEquals(10, parent.getChildCount());
+    	assertEquals("batch9", parent.getLastChild().<Element>cast().getId());
+    }
+}
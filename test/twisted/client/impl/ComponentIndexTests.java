@@ -0,0 +1,132 @@
+package twisted.client.impl;
+
+import java.util.ArrayList;
+
+import twisted.client.ComponentLog;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.NodeList;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/** Checks index answers against a walk of the DOM as the DOM changes. */
+public class ComponentIndexTests extends GWTTestCase {
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    @Override
+    protected void gwtTearDown() throws Exception {
+    	ComponentIndex.disable();
+    }
+    
+    /** Returns the elements under root (not including it) with the class, by walking the DOM. */
+    private static ArrayList<Element> walk(String classname, Element root) {
+    	ArrayList<Element> rtn = new ArrayList<Element>();
+    	NodeList<Element> all = root.getElementsByTagName("*");
+    	for (int i = 0; i < all.getLength(); ++i) {
+    		if (ComponentQuery.matchesClassTarget(all.getItem(i), classname))
+    			rtn.add(all.getItem(i));
+    	}
+    	return(rtn);
+    }
+    
+    /** Returns the elements a query gives. */
+    private static ArrayList<Element> query(String classname, Element root) {
+    	ArrayList<Element> rtn = new ArrayList<Element>();
+    	ComponentQuery q = ComponentQuery.query(classname, root);
+    	for (int i = 0; i < q.getLength(); ++i)
+    		rtn.add(q.getItem(i));
+    	return(rtn);
+    }
+    
+    /** Asserts the index, query() and iterate() all agree with a walk. */
+    private static void check(String classname, Element root) {
+    	ArrayList<Element> expected = walk(classname, root);
+    	assertTrue(ComponentIndex.get().covers(root));
+    	assertEquals(expected, ComponentIndex.get().getByClass(classname, root));
+    	assertEquals(expected, query(classname, root));
+    	ArrayList<Element> iterated = new ArrayList<Element>();
+    	for (Element e : ComponentQuery.iterate(classname, root))
+    		iterated.add(e);
+    	assertEquals(expected, iterated);
+    }
+    
+    /** Creates an element with the given class, and appends it to parent. */
+    private static Element add(Element parent, String classname) {
+    	Element rtn = Document.get().createDivElement();
+    	rtn.setClassName(classname);
+    	parent.appendChild(rtn);
+    	return(rtn);
+    }
+    
+    /** Replaces the page content, and returns a container for the test. */
+    private static Element pageContent() {
+    	Element body = Document.get().getBody();
+    	body.setInnerHTML("");
+    	Element rtn = add(body, "Block");
+    	add(add(rtn, "Idx"), "Idx Other");
+    	add(rtn, "Other");
+    	return(rtn);
+    }
+    
+    public void testMutations() {
+    	Element block = pageContent();
+    	if (ComponentIndex.enable()) {
+    		Element body = Document.get().getBody();
+    		check("Idx", body);
+    		check("Idx", block);
+    		
+    		// Add, including a subtree.
+    		Element added = add(block, "Idx");
+    		add(added, "Idx");
+    		check("Idx", block);
+    		
+    		// Move to the front.
+    		block.insertFirst(added);
+    		check("Idx", block);
+    		
+    		// Move somewhere else entirely.
+    		Element other = add(body, "Other");
+    		other.appendChild(added);
+    		check("Idx", block);
+    		check("Idx", other);
+    		check("Idx", body);
+    		
+    		// Class changes.
+    		added.setClassName("Other");
+    		check("Idx", other);
+    		check("Other", body);
+    		added.setClassName("Idx");
+    		check("Idx", other);
+    		
+    		// Removal.
+    		added.removeFromParent();
+    		check("Idx", body);
+    		
+    		// Ids.
+    		block.getFirstChildElement().setId("IdxId");
+    		assertEquals(block.getFirstChildElement(), ComponentQuery.iterate("IdxId", body, ComponentQuery.QueryType.ID, false).nextOrNull());
+    		block.getFirstChildElement().setId("");
+    		assertNull(ComponentQuery.iterate("IdxId", body, ComponentQuery.QueryType.ID, false).nextOrNull());
+    	}
+    }
+    
+    /** Fragment lookups for classes with more than FILTER_LIMIT members. */
+    public void testLargeFragment() {
+    	Element block = pageContent();
+    	if (ComponentIndex.enable()) {
+    		Element fragment = add(block, "Fragment");
+    		for (int i = 0; i < 100; ++i) {
+    			add(block, "Many");
+    			add(add(fragment, "Other"), "Many");
+    		}
+    		check("Many", fragment);
+    		check("Many", block);
+    		check("Many", Document.get().getBody());
+    	}
+    }
+}
@@ -0,0 +1,84 @@
+package twisted.client.impl;
+
+import twisted.client.ComponentLog;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Compares the native and walking ComponentQuery paths on large pages.
+ * <p>
+ * Not part of AllClientTests; run it directly when changing the query code.
+ */
+public class ComponentQueryBenchmark extends GWTTestCase {
+
+    /** Number of times each query is repeated. */
+    private static final int RUNS = 10;
+
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+
+    /** Generates a synthetic page of roughly width^depth nodes. */
+    private Element genPage(int width, int depth) {
+    	Element rtn = Document.get().createDivElement();
+    	genChildren(rtn, width, depth, 0);
+    	Document.get().getBody().appendChild(rtn);
+    	return(rtn);
+    }
+
+    private void genChildren(Element parent, int width, int depth, int index) {
+    	if (depth > 0) {
+    		for (int i = 0; i < width; ++i) {
+    			Element e = Document.get().createDivElement();
+    			if ((index + i) % 50 == 0)
+    				e.setClassName("style1 Component ComponentId-Sample");
+    			else if ((index + i) % 7 == 0)
+    				e.setClassName("style1 style2 ComponentValue ComponentId-Value1");
+    			else
+    				e.setClassName("style1 style2");
+    			parent.appendChild(e);
+    			genChildren(e, width, depth - 1, index * width + i);
+    		}
+    	}
+    }
+
+    /** Times a class query, returning the last result. */
+    private ComponentQuery time(String label, String classname, Element root) {
+    	ComponentQuery rtn = null;
+    	Duration d = new Duration();
+    	for (int i = 0; i < RUNS; ++i)
+    		rtn = ComponentQuery.query(classname, root);
+    	ComponentLog.trace(label + ": " + (d.elapsedMillis() / RUNS) + "ms per query, " + rtn.getLength() + " matches");
+    	return(rtn);
+    }
+
+    private void compare(int width, int depth) {
+    	Element root = genPage(width, depth);
+    	try {
+	    	ComponentQuery.setNativeEnabled(false);
+	    	ComponentQuery walked = time("walk " + width + "^" + depth, "Component", root);
+	    	ComponentQuery.setNativeEnabled(true);
+	    	ComponentQuery found = time("native " + width + "^" + depth, "Component", root);
+	    	assertEquals(walked.getLength(), found.getLength());
+	    	for (int i = 0; i < walked.getLength(); ++i)
+	    		assertSame(walked.getItem(i), found.getItem(i));
+    	}
+    	finally {
+	    	ComponentQuery.setNativeEnabled(true);
+	    	root.removeFromParent();
+    	}
+    }
+
+    public void testWidePage() {
+    	compare(30, 3);
+    }
+
+    public void testDeepPage() {
+    	compare(3, 9);
+    }
+}
@@ -0,0 +1,92 @@
+package twisted.client.impl;
+
+import twisted.client.ComponentLog;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+
+/**
+ * Compares the TreeWalker and pointer paths of ComponentWalker on deep and wide trees.
+ * <p>
+ * Not part of AllClientTests; run it directly when changing the walker.
+ */
+public class ComponentWalkerBenchmark extends GWTTestCase {
+
+    /** Number of times each walk is repeated. */
+    private static final int RUNS = 10;
+
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+
+    /** A single chain of nested elements. */
+    private Element genDeep(int depth) {
+    	Element rtn = Document.get().createDivElement();
+    	Element parent = rtn;
+    	for (int i = 0; i < depth; ++i) {
+    		Element e = Document.get().createDivElement();
+    		e.setClassName(i % 20 == 0 ? "Component" : "style1");
+    		parent.appendChild(Document.get().createTextNode(" "));
+    		parent.appendChild(e);
+    		parent = e;
+    	}
+    	Document.get().getBody().appendChild(rtn);
+    	return(rtn);
+    }
+
+    /** A single level of sibling elements. */
+    private Element genWide(int width) {
+    	Element rtn = Document.get().createDivElement();
+    	for (int i = 0; i < width; ++i) {
+    		Element e = Document.get().createDivElement();
+    		e.setClassName(i % 20 == 0 ? "Component" : "style1");
+    		rtn.appendChild(Document.get().createTextNode(" "));
+    		rtn.appendChild(e);
+    	}
+    	Document.get().getBody().appendChild(rtn);
+    	return(rtn);
+    }
+
+    /** Times a full walk, returning the element count. */
+    private int time(String label, Element root, boolean scoped) {
+    	int rtn = 0;
+    	Duration d = new Duration();
+    	for (int i = 0; i < RUNS; ++i) {
+    		rtn = 0;
+    		ComponentWalker w = new ComponentWalker(root, scoped);
+    		while (w.next() != null)
+    			++rtn;
+    	}
+    	ComponentLog.trace(label + ": " + (d.elapsedMillis() / RUNS) + "ms per walk, " + rtn + " elements");
+    	return(rtn);
+    }
+
+    private void compare(String label, Element root) {
+    	try {
+    		for (boolean scoped : new boolean[] { false, true }) {
+    			String name = label + (scoped ? " scoped" : "");
+	    		ComponentWalker.setTreeWalkerEnabled(false);
+	    		int walked = time("pointer " + name, root, scoped);
+	    		ComponentWalker.setTreeWalkerEnabled(true);
+	    		int found = time("treewalker " + name, root, scoped);
+	    		assertEquals(walked, found);
+    		}
+    	}
+    	finally {
+    		ComponentWalker.setTreeWalkerEnabled(true);
+    		root.removeFromParent();
+    	}
+    }
+
+    public void testDeepTree() {
+    	compare("deep", genDeep(2000));
+    }
+
+    public void testWideTree() {
+    	compare("wide", genWide(50000));
+    }
+}
@@ -3,7 +3,9 @@ package twisted.client.sample;
 import twisted.client.Component;
 import twisted.client.ComponentApi;
 import twisted.client.ComponentContainer;
+import twisted.client.ComponentType;
 
+@ComponentType("SampleB")
 public class SampleB extends Component {
 
 	public SampleB(ComponentContainer root) {
@@ -0,0 +1,14 @@
+package twisted.client.sample;
+
+import twisted.client.BackgroundComponent;
+import twisted.client.ComponentContainer;
+import twisted.client.ComponentType;
+
+/** A SampleOrder that is init()'ed and run when the browser is idle. */
+@ComponentType("SampleBackground")
+public class SampleBackground extends SampleOrder implements BackgroundComponent {
+
+	public SampleBackground(ComponentContainer root) {
+		super(root);
+	}
+}
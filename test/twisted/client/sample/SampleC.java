@@ -3,7 +3,9 @@ package twisted.client.sample;
 import twisted.client.Component;
 import twisted.client.ComponentApi;
 import twisted.client.ComponentContainer;
+import twisted.client.ComponentType;
 
+@ComponentType(value = "SampleC", split = true)
 public class SampleC extends Component {
 
 	public SampleC(ComponentContainer root) {
@@ -0,0 +1,32 @@
+package twisted.client.sample;
+
+import twisted.client.Component;
+import twisted.client.ComponentApi;
+import twisted.client.ComponentContainer;
+import twisted.client.ComponentType;
+
+/** Depends on the component with the previous id in the chain; ids are Chain-0, Chain-1, ... */
+@ComponentType("SampleChain")
+public class SampleChain extends Component {
+
+	public SampleChain(ComponentContainer root) {
+		super(root);
+	}
+
+	@Override
+	public ComponentApi api() {
+		return null;
+	}
+
+	@Override
+	public void init() {
+		int index = Integer.parseInt(getContainer().getElement().getId().substring("Chain-".length()));
+		if (index > 0)
+			requireComponent("Chain-" + (index - 1));
+	}
+	
+	@Override
+	public void run() {
+		complete();
+	}
+}
@@ -21,5 +21,17 @@ public class SampleFactory extends ComponentFactory {
 			c = new SampleC(root);
 			root.getRegister().componentCreated(c, requestId);
 		}
+		else if(root.getType().equals("SampleChain")) {
+			c = new SampleChain(root);
+			root.getRegister().componentCreated(c, requestId);
+		}
+		else if(root.getType().equals("SampleOrder")) {
+			c = new SampleOrder(root);
+			root.getRegister().componentCreated(c, requestId);
+		}
+		else if(root.getType().equals("SampleBackground")) {
+			c = new SampleBackground(root);
+			root.getRegister().componentCreated(c, requestId);
+		}
 	}
 }
@@ -0,0 +1,7 @@
+package twisted.client.sample;
+
+import twisted.client.GeneratedComponentFactory;
+
+/** The same as SampleFactory, but built from the @ComponentType annotations. */
+public abstract class SampleGeneratedFactory extends GeneratedComponentFactory {
+}
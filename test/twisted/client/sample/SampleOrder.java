@@ -0,0 +1,76 @@
+package twisted.client.sample;
+
+import java.util.ArrayList;
+
+import twisted.client.Component;
+import twisted.client.ComponentApi;
+import twisted.client.ComponentContainer;
+import twisted.client.ComponentType;
+import twisted.client.utils.AsyncScheduler;
+
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+
+/** 
+ * Records the order components are run in, for the scheduler tests.
+ * <p>
+ * Requires the components whose ids are listed, comma separated, in the 
+ * data-requires attribute of the root element. run() completes async, or 
+ * fails if the root element has the SampleFail class.
+ */
+@ComponentType("SampleOrder")
+public class SampleOrder extends Component {
+	
+	/** Ids of the components run, in the order they were run. */
+	public static ArrayList<String> order = new ArrayList<String>();
+	
+	/** Number of components running now. */
+	public static int running = 0;
+	
+	/** Most components running at once. */
+	public static int maxRunning = 0;
+	
+	/** Number of instances created. */
+	public static int created = 0;
+
+	public SampleOrder(ComponentContainer root) {
+		super(root);
+		++created;
+	}
+	
+	/** Clears the recorded runs. */
+	public static void reset() {
+		order.clear();
+		running = 0;
+		maxRunning = 0;
+		created = 0;
+	}
+
+	@Override
+	public ComponentApi api() {
+		return null;
+	}
+
+	@Override
+	public void init() {
+		String requires = getContainer().getRootElement().getAttribute("data-requires");
+		if ((requires != null) && (requires.length() > 0)) {
+			for (String id : requires.split(","))
+				requireComponent(id);
+		}
+	}
+	
+	@Override
+	public void run() {
+		order.add(getContainer().getRootElement().getId());
+		maxRunning = Math.max(maxRunning, ++running);
+		AsyncScheduler.schedule(new ScheduledCommand() {
+			public void execute() {
+				--running;
+				if (getContainer().getRootElement().getClassName().contains("SampleFail"))
+					failed();
+				else
+					complete();
+			}
+		});
+	}
+}
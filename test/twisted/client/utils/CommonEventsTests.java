@@ -0,0 +1,66 @@
+package twisted.client.utils;
+
+import java.util.HashMap;
+
+import twisted.client.ComponentLog;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+
+public class CommonEventsTests extends GWTTestCase {
+    
+    /** Template markup, with Name and Title targets; Title appears twice. */
+    private static final String TEMPLATE = "<div><span class=\"Name\"></span><p class=\"Title Other\">x</p></div><div class=\"Title\"></div>";
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    private static Element template() {
+    	Element rtn = Document.get().createDivElement();
+    	rtn.setInnerHTML(TEMPLATE);
+    	return(rtn);
+    }
+    
+    private static HashMap<String, Element> properties(String name, String title) {
+    	HashMap<String, Element> rtn = new HashMap<String, Element>();
+    	Element n = Document.get().createSpanElement();
+    	n.setInnerHTML(name);
+    	rtn.put("Name", n);
+    	Element t = Document.get().createElement("b");
+    	t.setInnerHTML(title);
+    	rtn.put("Title", t);
+    	return(rtn);
+    }
+    
+    /** Returns the markup cssTemplate() gives for the properties. */
+    private static String expected(String name, String title) {
+    	Element rtn = template();
+    	CommonEvents.cssTemplate(rtn, properties(name, title));
+    	return(rtn.getInnerHTML());
+    }
+    
+    public void testFillMatchesTemplate() {
+    	Element fill = template();
+    	CommonEvents.cssFill(fill, properties("First", "One"));
+    	assertEquals(expected("First", "One"), fill.getInnerHTML());
+    }
+    
+    public void testRefill() {
+    	Element fill = template();
+    	CommonEvents.cssFill(fill, properties("First", "One"));
+    	CommonEvents.cssFill(fill, properties("Second", "Two"));
+    	assertEquals(expected("Second", "Two"), fill.getInnerHTML());
+    }
+    
+    public void testRefillReplacedContent() {
+    	Element fill = template();
+    	CommonEvents.cssFill(fill, properties("First", "One"));
+    	fill.setInnerHTML(TEMPLATE);
+    	CommonEvents.cssFill(fill, properties("Second", "Two"));
+    	assertEquals(expected("Second", "Two"), fill.getInnerHTML());
+    }
+}
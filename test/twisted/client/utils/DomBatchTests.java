@@ -0,0 +1,129 @@
+package twisted.client.utils;
+
+import twisted.client.ComponentLog;
+
+import com.google.gwt.core.client.Scheduler.ScheduledCommand;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.dom.client.InputElement;
+import com.google.gwt.junit.client.GWTTestCase;
+
+public class DomBatchTests extends GWTTestCase {
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    public void testReadsBeforeWrites() {
+    	final InputElement input = Document.get().createTextInputElement();
+    	Document.get().getBody().appendChild(input);
+    	input.setValue("before");
+    	
+    	final String[] seen = new String[2];
+    	DomBatch.resetStats();
+    	DomBatch.value(input, "after");
+    	DomBatch.value(input, new GenericCallback<String>() {
+			public void onSuccess(String value) {
+				seen[0] = value;
+			}
+			public void onFailure(Throwable error) {
+			}
+		});
+    	DomBatch.hide(input);
+    	DomBatch.value(input, new GenericCallback<String>() {
+			public void onSuccess(String value) {
+				seen[1] = value;
+			}
+			public void onFailure(Throwable error) {
+			}
+		});
+    	
+    	// Nothing has run yet.
+    	assertEquals("before", input.getValue());
+    	assertEquals(2, DomBatch.getLayoutsAvoided());
+    	
+    	DomBatch.flush();
+    	assertEquals("before", seen[0]);
+    	assertEquals("before", seen[1]);
+    	assertEquals("after", input.getValue());
+    	assertEquals("none", input.getStyle().getDisplay());
+    	assertEquals(1, DomBatch.getFlushCount());
+    }
+    
+    public void testReadFromWriteWaits() {
+    	final Element target = Document.get().createDivElement();
+    	final int[] reads = new int[1];
+    	DomBatch.resetStats();
+    	DomBatch.write(new ScheduledCommand() {
+			public void execute() {
+				target.setInnerHTML("x");
+				DomBatch.read(new ScheduledCommand() {
+					public void execute() {
+						++reads[0];
+					}
+				});
+			}
+		});
+    	
+    	DomBatch.flush();
+    	assertEquals("x", target.getInnerHTML());
+    	assertEquals(0, reads[0]);
+    	
+    	delayTestFinish(2000);
+    	AsyncScheduler.scheduleFrame(new ScheduledCommand() {
+			public void execute() {
+				AsyncScheduler.scheduleFrame(new ScheduledCommand() {
+					public void execute() {
+						assertEquals(1, reads[0]);
+						finishTest();
+					}
+				});
+			}
+		});
+    }
+    
+    public void testDirectFlush() {
+    	final Element target = Document.get().createDivElement();
+    	DomBatch.resetStats();
+    	DomBatch.write(new ScheduledCommand() {
+			public void execute() {
+				target.setInnerHTML("a");
+			}
+		});
+    	DomBatch.flush();
+    	DomBatch.flush();
+    	assertEquals("a", target.getInnerHTML());
+    	assertEquals(1, DomBatch.getFlushCount());
+    	
+    	// Queued after the direct flush; the frame already pending runs both, in one flush.
+    	DomBatch.read(new ScheduledCommand() {
+			public void execute() {
+				DomBatch.write(new ScheduledCommand() {
+					public void execute() {
+						target.setInnerHTML(target.getInnerHTML() + "c");
+					}
+				});
+			}
+		});
+    	DomBatch.write(new ScheduledCommand() {
+			public void execute() {
+				target.setInnerHTML(target.getInnerHTML() + "b");
+			}
+		});
+    	
+    	delayTestFinish(2000);
+    	AsyncScheduler.scheduleFrame(new ScheduledCommand() {
+			public void execute() {
+				AsyncScheduler.scheduleFrame(new ScheduledCommand() {
+					public void execute() {
+						assertEquals("abc", target.getInnerHTML());
+						assertEquals(2, DomBatch.getFlushCount());
+						finishTest();
+					}
+				});
+			}
+		});
+    }
+}
@@ -0,0 +1,153 @@
+package twisted.client.utils;
+
+import java.util.HashMap;
+
+import twisted.client.ComponentLog;
+import twisted.client.impl.ComponentFrame;
+
+import com.google.gwt.core.client.Duration;
+import com.google.gwt.core.client.JavaScriptObject;
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+import com.google.gwt.user.client.Timer;
+
+/**
+ * Churns elements through ElementMap and HashMap, reporting time and how many detached elements were collected.
+ * <p>
+ * Collection is probed with WeakRef, where the browser has it, a few 
+ * seconds after the churn while the map is still held; so a weak map 
+ * should report its elements collected, and a HashMap none. Browsers
+ * don't have to collect in that time, so only the weak map reporting 
+ * none is worth a second look; run with window.gc exposed (eg. Chrome 
+ * with --js-flags=--expose-gc) for a firm answer.
+ * <p>
+ * Not part of AllClientTests; run it directly when changing ElementMap.
+ */
+public class ElementMapBenchmark extends GWTTestCase {
+
+    /** Number of elements churned. */
+    private static final int ELEMENTS = 100000;
+
+    /** Elements are attached and detached in batches of this size. */
+    private static final int BATCH = 1000;
+
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+
+    /** Milliseconds to wait for the browser to collect detached elements. */
+    private static final int COLLECT_DELAY = 3000;
+
+    /** Returns a new collection probe, or null if the browser has no WeakRef. */
+    private static native JavaScriptObject probe() /*-{
+    	return($wnd.WeakRef ? [] : null);
+    }-*/;
+
+    /** Adds a weak reference to the given element to the probe. */
+    private static native void watch(JavaScriptObject probe, Element e) /*-{
+    	probe.push(new $wnd.WeakRef(e));
+    }-*/;
+
+    /** Runs a collection, if the browser exposes window.gc, and returns the number of probed elements collected. */
+    private static native int collected(JavaScriptObject probe) /*-{
+    	if ($wnd.gc)
+    		$wnd.gc();
+    	var rtn = 0;
+    	for (var i = 0; i < probe.length; ++i) {
+    		if (probe[i].deref() === undefined)
+    			++rtn;
+    	}
+    	return(rtn);
+    }-*/;
+
+    /** Creates a batch of elements, attached to the body under one parent. */
+    private Element batch() {
+    	Element rtn = Document.get().createDivElement();
+    	for (int i = 0; i < BATCH; ++i) 
+    		rtn.appendChild(Document.get().createDivElement());
+    	Document.get().getBody().appendChild(rtn);
+    	return(rtn);
+    }
+
+    /** 
+     * Reports the time taken, then after COLLECT_DELAY how many of the probed
+     * elements were collected; map is held until then, and its size checked.
+     */
+    private void report(final String label, Duration d, final JavaScriptObject probe, final Object map, final int size) {
+    	ComponentLog.trace(label + ": " + d.elapsedMillis() + "ms");
+    	if (probe != null) {
+    		delayTestFinish(COLLECT_DELAY * 2);
+    		new Timer() {
+    			public void run() {
+    				ComponentLog.trace(label + ": " + collected(probe) + " of " + ELEMENTS / BATCH + " probed elements collected");
+    				assertEquals(size, mapSize(map));
+    				finishTest();
+    			}
+    		}.schedule(COLLECT_DELAY);
+    	}
+    }
+
+    /** Returns the size of an ElementMap or HashMap. */
+    private static int mapSize(Object map) {
+    	int rtn = (map instanceof ElementMap<?>) ? ((ElementMap<?>) map).size() : ((HashMap<?, ?>) map).size();
+    	return(rtn);
+    }
+
+    /** Maps each element, then detaches it without removing it from the map. */
+    public void testElementMapChurn() {
+    	ElementMap<Object> map = new ElementMap<Object>();
+    	JavaScriptObject probe = probe();
+    	Object value = new Object();
+    	Duration d = new Duration();
+    	for (int i = 0; i < ELEMENTS / BATCH; ++i) {
+    		Element parent = batch();
+    		for (Element e = parent.getFirstChildElement(); e != null; e = e.getNextSiblingElement()) {
+    			map.put(e, value);
+    			assertEquals(value, map.get(e));
+    		}
+    		if (probe != null)
+    			watch(probe, parent.getFirstChildElement());
+    		parent.removeFromParent();
+    	}
+    	assertEquals(ELEMENTS, map.size());
+    	report("ElementMap (weak: " + ElementMap.isWeakMapSupported() + ")", d, probe, map, ELEMENTS);
+    }
+
+    /** As per testElementMapChurn(), with a HashMap. */
+    public void testHashMapChurn() {
+    	HashMap<Element, Object> map = new HashMap<Element, Object>();
+    	JavaScriptObject probe = probe();
+    	Object value = new Object();
+    	Duration d = new Duration();
+    	for (int i = 0; i < ELEMENTS / BATCH; ++i) {
+    		Element parent = batch();
+    		for (Element e = parent.getFirstChildElement(); e != null; e = e.getNextSiblingElement()) {
+    			map.put(e, value);
+    			assertEquals(value, map.get(e));
+    		}
+    		if (probe != null)
+    			watch(probe, parent.getFirstChildElement());
+    		parent.removeFromParent();
+    	}
+    	assertEquals(ELEMENTS, map.size());
+    	report("HashMap", d, probe, map, ELEMENTS);
+    }
+
+    /** Churns frames through the shared frame cache, disposing each batch. */
+    public void testFrameChurn() {
+    	int baseline = ComponentFrame.getCacheSize();
+    	Duration d = new Duration();
+    	for (int i = 0; i < ELEMENTS / BATCH; ++i) {
+    		Element parent = batch();
+    		for (Element e = parent.getFirstChildElement(); e != null; e = e.getNextSiblingElement()) 
+    			ComponentFrame.get(e);
+    		ComponentFrame.dispose(parent);
+    		parent.removeFromParent();
+    	}
+    	assertEquals(baseline, ComponentFrame.getCacheSize());
+    	ComponentLog.trace("ComponentFrame: " + d.elapsedMillis() + "ms");
+    }
+}
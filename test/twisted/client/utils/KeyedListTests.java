@@ -0,0 +1,147 @@
+package twisted.client.utils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+import twisted.client.Component;
+import twisted.client.ComponentLog;
+import twisted.client.ComponentRegister;
+import twisted.client.sample.SampleFactory;
+
+import com.google.gwt.dom.client.Document;
+import com.google.gwt.dom.client.Element;
+import com.google.gwt.junit.client.GWTTestCase;
+
+public class KeyedListTests extends GWTTestCase {
+    
+    @Override
+    public String getModuleName() {
+        ComponentLog.setDebugLevel(ComponentLog.DEBUG_ALL);
+        return("twisted.Twisted");
+    }
+    
+    /** Rows are SampleB components, with the value as Value1. */
+    private static class Renderer implements KeyedList.RowRenderer<String> {
+		public Element create(String key, String value) {
+			Element rtn = Document.get().createDivElement();
+			rtn.setClassName("Component ComponentId-SampleB");
+			rtn.setId("row-" + key);
+			rtn.setInnerHTML("<div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">" + value + "</div>");
+			return(rtn);
+		}
+		public void update(String key, String value, Element row) {
+			row.getFirstChildElement().getNextSiblingElement().setInnerHTML(value);
+		}
+    }
+    
+    private static List<String> list(String... items) {
+    	return(Arrays.asList(items));
+    }
+    
+    /** Returns the row keys, in document order. */
+    private static List<String> order(Element parent) {
+    	ArrayList<String> rtn = new ArrayList<String>();
+    	for (Element e = parent.getFirstChildElement(); e != null; e = e.getNextSiblingElement())
+    		rtn.add(e.getId().substring("row-".length()));
+    	return(rtn);
+    }
+    
+    public void testUpdate() {
+    	final Element parent = Document.get().createDivElement();
+    	Document.get().getBody().appendChild(parent);
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	final KeyedList<String> rows = new KeyedList<String>(parent, r, new Renderer());
+    	
+    	rows.update(list("a", "b", "c", "d"), list("1", "2", "3", "4"));
+    	assertEquals(4, rows.getInserted());
+    	assertEquals(list("a", "b", "c", "d"), order(parent));
+    	
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				Component b = r.getComponent("row-b");
+				assertNotNull(b);
+				
+				// One move; b keeps its component.
+		    	rows.update(list("d", "a", "b", "c"), list("4", "1", "two", "3"));
+		    	assertEquals(0, rows.getInserted());
+		    	assertEquals(0, rows.getRemoved());
+		    	assertEquals(1, rows.getMoved());
+		    	assertEquals(list("d", "a", "b", "c"), order(parent));
+		    	assertSame(b, r.getComponent("row-b"));
+		    	assertEquals("two", b.getContainer().getValue("Value1"));
+		    	
+		    	// Removed rows lose their components.
+		    	rows.update(list("a", "c", "e"), list("1", "3", "5"));
+		    	assertEquals(1, rows.getInserted());
+		    	assertEquals(2, rows.getRemoved());
+		    	assertEquals(0, rows.getMoved());
+		    	assertEquals(list("a", "c", "e"), order(parent));
+		    	assertNull(r.getComponent("row-b"));
+		    	
+		    	parent.removeFromParent();
+		    	finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    }
+    
+    public void testMismatchedValues() {
+    	Element parent = Document.get().createDivElement();
+    	KeyedList<String> rows = new KeyedList<String>(parent, new ComponentRegister(new SampleFactory()), new Renderer());
+    	try {
+    		rows.update(list("a", "b"), list("1"));
+    		fail("Mismatched lists accepted");
+    	}
+    	catch (IllegalArgumentException e) {
+    	}
+    	assertEquals(0, rows.size());
+    	assertNull(parent.getFirstChildElement());
+    }
+    
+    public void testAdopt() {
+    	final Element parent = Document.get().createDivElement();
+    	Document.get().getBody().appendChild(parent);
+    	final Renderer renderer = new Renderer();
+    	for (String key : list("a", "b", "c"))
+    		parent.appendChild(renderer.create(key, key));
+    	final ComponentRegister r = new ComponentRegister(new SampleFactory());
+    	
+    	r.attachReadyListener(new GenericCallback<Void>() {
+			public void onSuccess(Void result) {
+				Component a = r.getComponent("row-a");
+				assertNotNull(a);
+				KeyedList<String> rows = new KeyedList<String>(parent, r, renderer);
+				try {
+					rows.adopt(list("a", "b"));
+					fail("Too few keys accepted");
+				}
+				catch (IllegalArgumentException e) {
+				}
+				rows.adopt(list("a", "b", "c"));
+				assertEquals(3, rows.size());
+				
+				// Adopted rows are kept, not duplicated.
+				rows.update(list("c", "a", "d"), list("3", "one", "4"));
+				assertEquals(1, rows.getInserted());
+				assertEquals(1, rows.getRemoved());
+				assertEquals(1, rows.getMoved());
+				assertEquals(list("c", "a", "d"), order(parent));
+				assertSame(a, r.getComponent("row-a"));
+				assertEquals("one", a.getContainer().getValue("Value1"));
+				assertNull(r.getComponent("row-b"));
+				
+				parent.removeFromParent();
+				finishTest();
+			}
+			public void onFailure(Throwable caught) {
+				fail(caught.toString());
+			}
+    	});
+    	delayTestFinish(10000);
+    	r.parse(parent);
+    }
+}
@@ -0,0 +1,79 @@
+package twisted.server;
+
+import junit.framework.TestCase;
+
+/** 
+ * Checks the paths ComponentManifest.scan() finds against the DOM a browser builds.
+ * <p>
+ * Plain JUnit; this is server side code.
+ */
+public class ComponentManifestTest extends TestCase {
+	
+	private static String scan(String html) {
+		return(ComponentManifest.scan(html).toJson());
+	}
+	
+	public void testComponent() {
+		String html = "<div class=\"Component ComponentId-SampleB\" id=\"B\"><div class=\"ComponentAsset ComponentId-Asset1\"></div><div class=\"ComponentValue ComponentId-Value1\">Value</div></div>";
+		assertEquals("[{\"t\":\"SampleB\",\"i\":\"B\",\"p\":[0],\"v\":{\"Value1\":[[1]]},\"a\":{\"Asset1\":[[0]]}}]", scan(html));
+	}
+	
+	public void testDocument() {
+		String html = "<!DOCTYPE html><html><head><title>x <div></title><script>var s='<div class=\"Component ComponentId-Fake\">';</script></head>" + 
+				"<body><!-- <div class='Component ComponentId-Fake'> --><p>text<br><img src=x></p><div class='Component ComponentId-A'></div></body></html>";
+		assertEquals("[{\"t\":\"A\",\"p\":[1]}]", scan(html));
+	}
+	
+	public void testNested() {
+		String html = "<div class='Component ComponentId-Outer'><input class=\"ComponentValue ComponentId-User\" value='a>b'>" + 
+				"<div class=\"Component ComponentId-Inner\"><span class=\"ComponentAsset ComponentId-Submit\"></span></div>" + 
+				"<span class=\"ComponentAsset ComponentId-Submit\"></span></div>";
+		assertEquals("[{\"t\":\"Outer\",\"p\":[0],\"v\":{\"User\":[[0]]},\"a\":{\"Submit\":[[2]]}},{\"t\":\"Inner\",\"p\":[0,1],\"a\":{\"Submit\":[[0]]}}]", scan(html));
+	}
+	
+	public void testSelfClosingDiv() {
+		// Browsers ignore the slash; the value ends up inside the asset.
+		String html = "<div class=\"Component ComponentId-A\"><div class=\"ComponentAsset ComponentId-Asset1\"/><div class=\"ComponentValue ComponentId-Value1\"></div></div>";
+		assertEquals("[{\"t\":\"A\",\"p\":[0],\"v\":{\"Value1\":[[0,0]]},\"a\":{\"Asset1\":[[0]]}}]", scan(html));
+	}
+	
+	public void testImpliedListItemEnd() {
+		String html = "<div class=\"Component ComponentId-L\"><ul><li>one<li class=\"ComponentValue ComponentId-V\">two</ul></div>";
+		assertEquals("[{\"t\":\"L\",\"p\":[0],\"v\":{\"V\":[[0,1]]}}]", scan(html));
+	}
+	
+	public void testImpliedDefinitionEnd() {
+		String html = "<div class=\"Component ComponentId-L\"><dl><dt>a<dd>b<dt class=\"ComponentValue ComponentId-V\">c</dl></div>";
+		assertEquals("[{\"t\":\"L\",\"p\":[0],\"v\":{\"V\":[[0,2]]}}]", scan(html));
+	}
+	
+	public void testImpliedOptionEnd() {
+		String html = "<div class=\"Component ComponentId-S\"><select><option>a<option class=\"ComponentValue ComponentId-V\">b</select></div>";
+		assertEquals("[{\"t\":\"S\",\"p\":[0],\"v\":{\"V\":[[0,1]]}}]", scan(html));
+	}
+	
+	public void testImpliedParagraphEnd() {
+		String html = "<p>text<div class=\"Component ComponentId-D\"></div>";
+		assertEquals("[{\"t\":\"D\",\"p\":[1]}]", scan(html));
+	}
+	
+	public void testStrayParagraphEnd() {
+		String html = "<div class=\"Component ComponentId-S\"></p><span class=\"ComponentValue ComponentId-X\"></span></div>";
+		assertEquals("[{\"t\":\"S\",\"p\":[0],\"v\":{\"X\":[[1]]}}]", scan(html));
+	}
+	
+	public void testInsertedTbody() {
+		String html = "<div class=\"Component ComponentId-T\"><table><tr><td class=\"ComponentAsset ComponentId-Cell\">x<td>y<tr><th class=\"ComponentAsset ComponentId-Cell\">z</table></div>";
+		assertEquals("[{\"t\":\"T\",\"p\":[0],\"a\":{\"Cell\":[[0,0,0,0],[0,0,1,0]]}}]", scan(html));
+	}
+	
+	public void testExplicitTableSections() {
+		String html = "<table><col><thead><tr><th>a</thead><tbody><tr><td><div class=\"Component ComponentId-C\"></div></td></tr></tbody></table>";
+		assertEquals("[{\"t\":\"C\",\"p\":[0,2,0,0,0]}]", scan(html));
+	}
+	
+	public void testScript() {
+		String script = ComponentManifest.scan("<div class=\"Component ComponentId-A\" id=\"&lt;/script&gt;\"></div>").toScript("components");
+		assertEquals("<script type=\"text/javascript\">var components=[{\"t\":\"A\",\"i\":\"<\\/script>\",\"p\":[0]}];</script>", script);
+	}
+}